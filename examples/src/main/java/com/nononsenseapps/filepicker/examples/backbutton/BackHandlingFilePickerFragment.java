@@ -27,8 +27,7 @@ public class BackHandlingFilePickerFragment extends FilePickerFragment {
      */
     public void goUp() {
         mCurrentPath = getParent(mCurrentPath);
-        mCheckedItems.clear();
-        mCheckedVisibleViewHolders.clear();
+        clearSelections();
         refresh(mCurrentPath);
     }
 }
\ No newline at end of file
@@ -10,11 +10,17 @@ package com.nononsenseapps.filepicker;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.ClipData;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,6 +48,16 @@ import androidx.fragment.app.FragmentManager;
  * EXTRA_ONLY_DIRS - (default false) allows only directories to be selected.
  * EXTRA_START_PATH - (default null) which should specify the starting path.
  * EXTRA_ALLOW_EXISTING_FILE - (default true) if existing files are selectable in 'new file'-mode
+ * EXTRA_SORT_MODE - (default SORT_NAME) the order in which items are listed, the user can
+ * change it from the menu
+ * EXTRA_EXTENSIONS - (default null) string array of extensions, only files with one of them
+ * or with one of the MIME types in EXTRA_MIME_TYPES are shown. The MIME type of the intent
+ * is used if EXTRA_MIME_TYPES is not given.
+ * EXTRA_SELECT_ACROSS_DIRS - (default false) with EXTRA_ALLOW_MULTIPLE, selections are kept
+ * when changing directory so that items from several directories are returned at once.
+ * EXTRA_RESULT_MANIFEST - (default false) with EXTRA_ALLOW_MULTIPLE, the selection is written
+ * to a {@link SelectionManifestProvider} and only its Uri is returned, so that selections of
+ * any size fit in the result. Read it with {@link Utils#querySelectedFiles}.
  * <p/>
  * The result of the user's action is returned in onActivityResult intent,
  * access it using getUri.
@@ -58,14 +74,23 @@ public abstract class AbstractFilePickerActivity<T> extends AppCompatActivity
     public static final String EXTRA_MODE = "nononsense.intent.MODE";
     public static final String EXTRA_ALLOW_CREATE_DIR = "nononsense.intent" + ".ALLOW_CREATE_DIR";
     public static final String EXTRA_SINGLE_CLICK = "nononsense.intent" + ".SINGLE_CLICK";
+    public static final String EXTRA_SORT_MODE = "nononsense.intent.SORT_MODE";
+    public static final String EXTRA_EXTENSIONS = "nononsense.intent.EXTENSIONS";
+    public static final String EXTRA_SELECT_ACROSS_DIRS = "nononsense.intent.SELECT_ACROSS_DIRS";
+    public static final String EXTRA_RESULT_MANIFEST = "nononsense.intent.RESULT_MANIFEST";
     // For compatibility
     public static final String EXTRA_ALLOW_MULTIPLE = "android.intent.extra" + ".ALLOW_MULTIPLE";
     public static final String EXTRA_ALLOW_EXISTING_FILE = "android.intent.extra" + ".ALLOW_EXISTING_FILE";
+    public static final String EXTRA_MIME_TYPES = "android.intent.extra" + ".MIME_TYPES";
     public static final String EXTRA_PATHS = "nononsense.intent.PATHS";
     public static final int MODE_FILE = AbstractFilePickerFragment.MODE_FILE;
     public static final int MODE_FILE_AND_DIR = AbstractFilePickerFragment.MODE_FILE_AND_DIR;
     public static final int MODE_NEW_FILE = AbstractFilePickerFragment.MODE_NEW_FILE;
     public static final int MODE_DIR = AbstractFilePickerFragment.MODE_DIR;
+    public static final int SORT_NAME = AbstractFilePickerFragment.SORT_NAME;
+    public static final int SORT_SIZE = AbstractFilePickerFragment.SORT_SIZE;
+    public static final int SORT_MODIFIED = AbstractFilePickerFragment.SORT_MODIFIED;
+    public static final int SORT_TYPE = AbstractFilePickerFragment.SORT_TYPE;
     protected static final String TAG = "filepicker_fragment";
     protected String startPath = null;
     protected int mode = AbstractFilePickerFragment.MODE_FILE;
@@ -73,6 +98,13 @@ public abstract class AbstractFilePickerActivity<T> extends AppCompatActivity
     protected boolean allowMultiple = false;
     private boolean allowExistingFile = true;
     protected boolean singleClick = false;
+    protected int sortMode = AbstractFilePickerFragment.SORT_NAME;
+    protected String[] extensions = null;
+    protected String[] mimeTypes = null;
+    protected boolean selectAcrossDirs = false;
+    protected boolean resultManifest = false;
+    // Set while a manifest is written, so that picking again does not write another
+    private boolean mWritingManifest = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -88,6 +120,16 @@ public abstract class AbstractFilePickerActivity<T> extends AppCompatActivity
             allowMultiple = intent.getBooleanExtra(EXTRA_ALLOW_MULTIPLE, allowMultiple);
             allowExistingFile = intent.getBooleanExtra(EXTRA_ALLOW_EXISTING_FILE, allowExistingFile);
             singleClick = intent.getBooleanExtra(EXTRA_SINGLE_CLICK, singleClick);
+            sortMode = intent.getIntExtra(EXTRA_SORT_MODE, sortMode);
+            extensions = intent.getStringArrayExtra(EXTRA_EXTENSIONS);
+            mimeTypes = intent.getStringArrayExtra(EXTRA_MIME_TYPES);
+            selectAcrossDirs = intent.getBooleanExtra(EXTRA_SELECT_ACROSS_DIRS, selectAcrossDirs);
+            resultManifest = intent.getBooleanExtra(EXTRA_RESULT_MANIFEST, resultManifest);
+            // Pickers started with GET_CONTENT usually only give the type of the intent
+            if (mimeTypes == null && intent.getType() != null &&
+                    !"*/*".equals(intent.getType())) {
+                mimeTypes = new String[]{intent.getType()};
+            }
         }
 
         // Default to cancelled
@@ -102,7 +144,16 @@ public abstract class AbstractFilePickerActivity<T> extends AppCompatActivity
         Fragment fragment = fm.findFragmentByTag(TAG);
 
         if (fragment == null) {
-            fragment = getFragment(startPath, mode, allowMultiple, allowCreateDir, allowExistingFile, singleClick);
+            AbstractFilePickerFragment<T> pickerFragment = getFragment(startPath, mode,
+                    allowMultiple, allowCreateDir, allowExistingFile, singleClick);
+            if (pickerFragment != null) {
+                pickerFragment.setSortMode(sortMode);
+                pickerFragment.setSelectAcrossDirectories(selectAcrossDirs);
+                if (extensions != null || mimeTypes != null) {
+                    pickerFragment.setTypeFilter(TypeFilter.compile(extensions, mimeTypes));
+                }
+            }
+            fragment = pickerFragment;
         }
 
         if (fragment != null) {
@@ -129,17 +180,60 @@ public abstract class AbstractFilePickerActivity<T> extends AppCompatActivity
         finish();
     }
 
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
     public void onFilesPicked(@NonNull final List<Uri> files) {
-        Intent i = new Intent();
-        i.putExtra(EXTRA_ALLOW_MULTIPLE, true);
+        if (!resultManifest) {
+            setInlineResult(files, toStrings(files));
+            return;
+        }
+        if (mWritingManifest) {
+            return;
+        }
+        mWritingManifest = true;
+        // Writing a large selection takes a while, so it is done off the main thread
+        final Context context = getApplicationContext();
+        final Handler handler = new Handler(Looper.getMainLooper());
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            final ArrayList<String> paths = toStrings(files);
+            Uri manifest = null;
+            try {
+                manifest = SelectionManifestProvider.writeManifest(context, paths);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write the selection manifest, returning it inline", e);
+            }
+            final Uri result = manifest;
+            handler.post(() -> {
+                mWritingManifest = false;
+                if (result == null) {
+                    setInlineResult(files, paths);
+                    return;
+                }
+                Intent i = new Intent();
+                i.putExtra(EXTRA_ALLOW_MULTIPLE, true);
+                i.setData(result);
+                i.putExtra(EXTRA_RESULT_MANIFEST, true);
+                i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                setResult(Activity.RESULT_OK, i);
+                finish();
+            });
+        });
+    }
 
-        // Set as String Extras for all versions
-        ArrayList<String> paths = new ArrayList<>();
+    @NonNull
+    private static ArrayList<String> toStrings(@NonNull List<Uri> files) {
+        ArrayList<String> paths = new ArrayList<>(files.size());
         for (Uri file : files) {
             paths.add(file.toString());
         }
+        return paths;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void setInlineResult(@NonNull List<Uri> files, @NonNull ArrayList<String> paths) {
+        Intent i = new Intent();
+        i.putExtra(EXTRA_ALLOW_MULTIPLE, true);
+
+        // Set as String Extras for all versions
         i.putStringArrayListExtra(EXTRA_PATHS, paths);
 
         // Set as Clip Data for Jelly bean and above
@@ -13,7 +13,12 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
@@ -33,13 +38,25 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.fragment.app.Fragment;
 import androidx.loader.app.LoaderManager;
+import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * A fragment representing a list of Files.
@@ -51,7 +68,8 @@ import java.util.List;
  */
 public abstract class AbstractFilePickerFragment<T> extends Fragment
         implements LoaderManager.LoaderCallbacks<List<T>>,
-        NewItemFragment.OnNewFolderListener, LogicHandler<T> {
+        NewItemFragment.OnNewFolderListener, BasketFragment.BasketHost,
+        PagedLogicHandler<T> {
 
     // The different preset modes of operation. This impacts the behaviour
     // and possible actions in the UI.
@@ -59,6 +77,14 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
     public static final int MODE_DIR = 1;
     public static final int MODE_FILE_AND_DIR = 2;
     public static final int MODE_NEW_FILE = 3;
+    // The orders in which items can be listed, directories always come first
+    public static final int SORT_NAME = 0;
+    // Smallest first
+    public static final int SORT_SIZE = 1;
+    // Most recently modified first
+    public static final int SORT_MODIFIED = 2;
+    // By file extension
+    public static final int SORT_TYPE = 3;
     // Where to display on open.
     public static final String KEY_START_PATH = "KEY_START_PATH";
     // See MODE_XXX constants above for possible values
@@ -71,10 +97,20 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
     public static final String KEY_ALLOW_EXISTING_FILE = "KEY_ALLOW_EXISTING_FILE";
     // If file can be selected by clicking only and checkboxes are not visible
     public static final String KEY_SINGLE_CLICK = "KEY_SINGLE_CLICK";
+    // See SORT_XXX constants above for possible values
+    public static final String KEY_SORT_MODE = "KEY_SORT_MODE";
+    // Only show files with these extensions or MIME types, see TypeFilter
+    public static final String KEY_EXTENSIONS = "KEY_EXTENSIONS";
+    public static final String KEY_MIME_TYPES = "KEY_MIME_TYPES";
+    // Keep selections when changing directory, see setSelectAcrossDirectories()
+    public static final String KEY_SELECT_ACROSS_DIRECTORIES = "KEY_SELECT_ACROSS_DIRECTORIES";
     // Used for saving state.
     protected static final String KEY_CURRENT_PATH = "KEY_CURRENT_PATH";
-    protected final HashSet<T> mCheckedItems;
-    protected final HashSet<CheckableViewHolder> mCheckedVisibleViewHolders;
+    // Listings with at least this many items are filtered and sorted on all cores
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
+    private static final String TAG = "AbstractFilePicker";
+    // Selected positions of the shown list, see getCheckedItems()
+    protected final SelectionModel mSelection;
     protected int mode = MODE_FILE;
     protected T mCurrentPath = null;
     protected boolean allowCreateDir = false;
@@ -93,14 +129,99 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
     protected boolean isLoading = false;
     protected View mNewFileButtonContainer = null;
     protected View mRegularButtonContainer = null;
+    // Orders names, see setNameSorter()
+    protected NameSorter nameSorter = new NameSorter();
+    // See setSortMode(), read by loader threads
+    protected volatile int sortMode = SORT_NAME;
+    // See setTypeFilter(), null to show all files
+    protected volatile TypeFilter typeFilter = null;
+    // Everything in the shown directory, before filtering. Null if the loader did not use
+    // prepareListing(), or if the directory could not be listed.
+    protected List<T> mRawFiles = null;
+    // Incremented whenever the shown listing is filtered again in memory
+    private int mFilterGeneration = 0;
+    private Handler mHandler = null;
+    // See setParallelThreshold()
+    protected int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    // Show items while a directory is being listed, see setStreamingLoad()
+    protected boolean streamingLoad = false;
+    protected int streamingChunkSize = ChunkPublisher.DEFAULT_CHUNK_SIZE;
+    protected long streamingChunkDelayMs = ChunkPublisher.DEFAULT_CHUNK_DELAY_MS;
+    // Incremented for every load started by refresh(), used to drop results of older loads
+    protected int mLoadGeneration = 0;
+    // The loader of the latest load, and the generation it was started for
+    private Loader<List<T>> mActiveLoader = null;
+    private int mActiveGeneration = -1;
+    // Runs loads instead of the LoaderManager when set, see setLoadExecutor()
+    protected LoadEngine<T> mLoadEngine = null;
+    protected long loadTimeoutMs = 0L;
+    private LoadEngine<T>.Request mLoadRequest = null;
+    // Where refilter() filters and sorts, see setFilterExecutor()
+    private Executor mFilterExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
+    private final LoadEngine.Callback<T> mLoadCallback = new LoadEngine.Callback<T>() {
+        @Override
+        public void onLoadFinished(int generation, @NonNull List<T> data) {
+            if (generation == mLoadGeneration) {
+                mLoadRequest = null;
+                AbstractFilePickerFragment.this.onLoadFinished(null, data);
+            }
+        }
+
+        @Override
+        public void onLoadFailed(int generation, @NonNull Exception error) {
+            if (generation == mLoadGeneration) {
+                mLoadRequest = null;
+                AbstractFilePickerFragment.this.onLoadFailed(error);
+            }
+        }
+    };
+    // The last load which has started showing partial results
+    private int mStreamedGeneration = -1;
+    // Reuse recent listings, see setUseListingCache()
+    protected boolean useListingCache = true;
+    // Show outdated cached listings while loading, see setStaleWhileRevalidate()
+    protected boolean staleWhileRevalidate = false;
+    // True while the visible listing is from the cache and a fresh one is loading
+    protected boolean mShowingStale = false;
+    // Full path of the directory whose listing is shown, null before the first listing
+    protected String mShownPath = null;
+    protected final DiffUtil.ItemCallback<T> mItemCallback = new DiffUtil.ItemCallback<T>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull T oldItem, @NonNull T newItem) {
+            return isSameItem(oldItem, newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull T oldItem, @NonNull T newItem) {
+            return isSameContent(oldItem, newItem);
+        }
+    };
+    // Where the listing currently being loaded will be cached
+    private String mPendingCacheKey = null;
+    // Changes reported while loading, applied once the listing is shown
+    private final LinkedHashMap<String, T> mPendingChanged = new LinkedHashMap<>();
+    private final LinkedHashMap<String, T> mPendingRemoved = new LinkedHashMap<>();
+    private String mPendingCachePath = null;
+    private long mPendingCacheStamp = ListingCache.NO_STAMP;
+    // Positions which can be selected, built when first needed for the current positions
+    private SelectionModel mCheckableMask = null;
+    private int mCheckableMaskGeneration = -1;
+    private int mCheckableMaskMode = -1;
+    // See setSelectAcrossDirectories()
+    protected boolean selectAcrossDirectories = false;
+    // Full paths of items selected in other directories than the one the adapter shows
+    protected final PathTrie mBasket = new PathTrie();
+    // True while a selection is being converted to Uris, see pickFiles()
+    private boolean mPickingFiles = false;
+    // Full path of the directory whose items mSelection refers to, null before the first
+    private String mSelectionPath = null;
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
      * fragment (e.g. upon screen orientation changes).
      */
     public AbstractFilePickerFragment() {
-        mCheckedItems = new HashSet<>();
-        mCheckedVisibleViewHolders = new HashSet<>();
+        mSelection = new SelectionModel();
 
         // Retain this fragment across configuration changes, to allow
         // asynctasks and such to be used with ease.
@@ -111,6 +232,224 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         return mAdapter;
     }
 
+    /**
+     * When enabled, recent listings are kept in the process wide {@link ListingCache} and
+     * reused if the backend reports that the directory is unchanged, see
+     * {@link #getListingStamp(Object)}. Enabled by default.
+     *
+     * @param useListingCache whether cached listings should be used or not
+     */
+    public void setUseListingCache(boolean useListingCache) {
+        this.useListingCache = useListingCache;
+    }
+
+    /**
+     * When enabled, navigating to a directory which has a cached listing shows that listing
+     * right away, even if it may be outdated. The directory is listed in the background as
+     * usual, and only the differences are applied once that completes. Use
+     * {@link #isShowingStaleData()} to tell the two states apart. Requires the listing cache.
+     *
+     * @param staleWhileRevalidate whether outdated listings should be shown while loading
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * @return true if the visible listing came from the cache and may be outdated, because
+     * the directory is still being listed.
+     */
+    public boolean isShowingStaleData() {
+        return mShowingStale;
+    }
+
+    /**
+     * Run loads on the given executor instead of through the {@link LoaderManager}. Several
+     * loads may then run at the same time, and navigating elsewhere cancels the current load
+     * through its {@link androidx.core.os.CancellationSignal}. See {@link #newLoadTask()}.
+     *
+     * @param executor to run loads on, or null to use the LoaderManager again
+     */
+    public void setLoadExecutor(@Nullable Executor executor) {
+        cancelLoad();
+        mLoadEngine = executor == null ? null : new LoadEngine<>(executor);
+    }
+
+    /**
+     * Set where {@link #refilter()} filters and sorts the listing again. The default is the
+     * shared {@link AsyncTask} thread pool.
+     *
+     * @param executor to filter on, or null to filter on the main thread right away
+     */
+    public void setFilterExecutor(@Nullable Executor executor) {
+        mFilterExecutor = executor;
+    }
+
+    /**
+     * Loads which take longer are cancelled and reported to {@link #onLoadFailed(Exception)}.
+     * Only used together with {@link #setLoadExecutor(Executor)}.
+     *
+     * @param timeoutMs how long a load may take, or 0 for no limit
+     */
+    public void setLoadTimeout(long timeoutMs) {
+        this.loadTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Set how names are ordered, for example using a {@link java.text.Collator} for the
+     * current locale or natural ordering of numbers. Takes effect on the next refresh.
+     *
+     * @param nameSorter to order items with
+     */
+    public void setNameSorter(@NonNull NameSorter nameSorter) {
+        this.nameSorter = nameSorter;
+    }
+
+    /**
+     * Set the order in which items are listed. If a directory is shown, its listing is
+     * sorted again on a background thread, without listing the directory again.
+     *
+     * @param sortMode one of {@link #SORT_NAME}, {@link #SORT_SIZE}, {@link #SORT_MODIFIED}
+     *                 and {@link #SORT_TYPE}
+     */
+    public void setSortMode(int sortMode) {
+        if (sortMode == this.sortMode) {
+            return;
+        }
+        this.sortMode = sortMode;
+        refilter();
+    }
+
+    public int getSortMode() {
+        return sortMode;
+    }
+
+    /**
+     * Only show files with certain extensions or MIME types. Directories are always shown.
+     * If a directory is shown, it is filtered again in memory, see {@link #refilter()}.
+     *
+     * @param typeFilter to apply, or null to show all files
+     */
+    public void setTypeFilter(@Nullable TypeFilter typeFilter) {
+        this.typeFilter = typeFilter;
+        refilter();
+    }
+
+    @Nullable
+    public TypeFilter getTypeFilter() {
+        return typeFilter;
+    }
+
+    @Nullable
+    private static TypeFilter readTypeFilter(@NonNull Bundle b, @Nullable TypeFilter fallback) {
+        if (!b.containsKey(KEY_EXTENSIONS) && !b.containsKey(KEY_MIME_TYPES)) {
+            return fallback;
+        }
+        return TypeFilter.compile(b.getStringArray(KEY_EXTENSIONS),
+                b.getStringArray(KEY_MIME_TYPES));
+    }
+
+    /**
+     * Filter and sort the shown directory again, for example after
+     * {@link #isItemVisible(Object)} or the sort order has changed. The unfiltered listing
+     * is kept in memory, so this happens on a background thread without listing the
+     * directory again, and only the differences are applied to the list. Selected items
+     * which are still visible stay selected.
+     * <p/>
+     * If no unfiltered listing is available, or a load is in progress, the directory is
+     * listed again instead.
+     */
+    public void refilter() {
+        if (mFiles == null || mAdapter == null) {
+            return;
+        }
+        final List<T> raw = mRawFiles;
+        if (isLoading || raw == null) {
+            // The load in progress may already have filtered the old way
+            refresh(mCurrentPath);
+            return;
+        }
+        final int generation = ++mFilterGeneration;
+        final Executor executor = mFilterExecutor;
+        if (executor == null) {
+            showListing(prepareListing(raw));
+            return;
+        }
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        executor.execute(() -> {
+            final List<T> listing = prepareListing(raw);
+            mHandler.post(() -> {
+                if (generation != mFilterGeneration || mAdapter == null || isLoading) {
+                    return;
+                }
+                if (mRawFiles != raw) {
+                    // Changed meanwhile, start over with the current contents
+                    if (mRawFiles != null) {
+                        refilter();
+                    }
+                    return;
+                }
+                showListing(listing);
+            });
+        });
+    }
+
+    /**
+     * Set from how many items on listings are filtered and sorted on all cores, instead of
+     * only on the loader thread. Below it, the overhead of splitting up the work outweighs
+     * the gain. Parallel processing needs API 24, older devices always work sequentially.
+     *
+     * @param parallelThreshold number of items, or {@link Integer#MAX_VALUE} to never use
+     *                          more than one core
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * When enabled, items are shown in chunks while a directory is still being listed, instead
+     * of all at once when the listing completes. Useful for huge directories and slow backends.
+     * The loader must pass its items to a {@link ChunkPublisher} for this to have any effect.
+     *
+     * @param streamingLoad whether partial listings should be shown or not
+     */
+    public void setStreamingLoad(boolean streamingLoad) {
+        this.streamingLoad = streamingLoad;
+    }
+
+    /**
+     * Configure how often partial listings are shown when streaming is enabled. A chunk is
+     * published when it holds maxItems, or when its first item has waited maxDelayMs.
+     *
+     * @param maxItems   largest number of items in a chunk
+     * @param maxDelayMs longest time an item waits before it is shown
+     */
+    public void setStreamingChunks(int maxItems, long maxDelayMs) {
+        this.streamingChunkSize = maxItems;
+        this.streamingChunkDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Keep the selection of a directory when another one is opened, so that items of several
+     * directories can be picked at once, if several items may be selected. Selected items of
+     * directories which are not shown are kept by their full path in a {@link PathTrie}, and
+     * are returned with {@link #toUri(Object)} of {@link #getPath(String)}. The user can look
+     * through and remove them from the menu.
+     * <p/>
+     * Directories which are paged through from a backend do not show which of their items
+     * were selected before, since they are not in memory completely.
+     *
+     * @param selectAcrossDirectories true to keep selections, false by default
+     */
+    public void setSelectAcrossDirectories(boolean selectAcrossDirectories) {
+        this.selectAcrossDirectories = selectAcrossDirectories;
+        if (!selectAcrossDirectories) {
+            mBasket.clear();
+        }
+    }
+
     /**
      * Set before making the fragment visible. This method will re-use the existing
      * arguments bundle in the fragment if it exists so extra arguments will not
@@ -175,7 +514,7 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         // Set Item Decoration if exists
         configureItemDecoration(inflater, recyclerView);
         // Set adapter
-        mAdapter = new FileItemAdapter<>(this);
+        mAdapter = new PagedFileItemAdapter<>(this);
         recyclerView.setAdapter(mAdapter);
 
         view.findViewById(R.id.nnf_button_cancel)
@@ -279,8 +618,10 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
             mToast.show();
             return;
         }*/
-        if ((allowMultiple || mode == MODE_FILE) &&
-                (mCheckedItems.isEmpty() || getFirstCheckedItem() == null)) {
+        final boolean nothingChecked = isSelectingAcrossDirectories() ?
+                getBasketPaths().isEmpty() :
+                mSelection.isEmpty() || getFirstCheckedItem() == null;
+        if ((allowMultiple || mode == MODE_FILE) && nothingChecked) {
             if (mToast == null) {
                 mToast = Toast.makeText(getActivity(), R.string.nnf_select_something_first,
                         Toast.LENGTH_SHORT);
@@ -301,8 +642,10 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
                 result = toUri(getPath(appendPath(getFullPath(mCurrentPath), filename)));
             }
             mListener.onFilePicked(result);
+        } else if (allowMultiple && isSelectingAcrossDirectories()) {
+            pickFiles(null, getBasketPaths());
         } else if (allowMultiple) {
-            mListener.onFilesPicked(toUri(mCheckedItems));
+            pickFiles(getCheckedItems(), null);
         } else if (mode == MODE_FILE) {
             //noinspection ConstantConditions
             mListener.onFilePicked(toUri(getFirstCheckedItem()));
@@ -310,7 +653,7 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
             mListener.onFilePicked(toUri(mCurrentPath));
         } else {
             // single FILE OR DIR
-            if (mCheckedItems.isEmpty()) {
+            if (mSelection.isEmpty()) {
                 mListener.onFilePicked(toUri(mCurrentPath));
             } else {
                 mListener.onFilePicked(toUri(getFirstCheckedItem()));
@@ -318,6 +661,50 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         }
     }
 
+    /**
+     * Items are only converted once the selection is final. Converting thousands of them
+     * takes a while, so it happens on a background thread, and further clicks on OK are
+     * ignored until the result has been delivered.
+     *
+     * @param items selected items, or null to use paths instead
+     * @param paths full paths of the selected items, converted with {@link #getPath(String)}
+     */
+    private void pickFiles(@Nullable final List<T> items, @Nullable final List<String> paths) {
+        if (mPickingFiles) {
+            return;
+        }
+        mPickingFiles = true;
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            final List<Uri> uris;
+            try {
+                List<T> files = items;
+                if (files == null) {
+                    files = new ArrayList<>(paths.size());
+                    for (String path : paths) {
+                        files.add(getPath(path));
+                    }
+                }
+                uris = toUri(files);
+            } catch (RuntimeException e) {
+                // Fail the same way as if converted on the main thread
+                mHandler.post(() -> {
+                    mPickingFiles = false;
+                    throw e;
+                });
+                return;
+            }
+            mHandler.post(() -> {
+                mPickingFiles = false;
+                if (mListener != null) {
+                    mListener.onFilesPicked(uris);
+                }
+            });
+        });
+    }
+
     /**
      *
      * @return filename as entered/picked by the user for the new file
@@ -341,13 +728,108 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
     public
     @Nullable
     T getFirstCheckedItem() {
-        //noinspection LoopStatementThatDoesntLoop
-        for (T file : mCheckedItems) {
-            return file;
+        final int position = mSelection.nextSelected(0);
+        return position < 0 || mAdapter == null ? null : mAdapter.peekItem(position);
+    }
+
+    /**
+     * @return the selected items, in the order they are shown
+     */
+    public
+    @NonNull
+    List<T> getCheckedItems() {
+        return mAdapter == null ? new ArrayList<T>() : mAdapter.getSelectedItems();
+    }
+
+    @NonNull
+    @Override
+    public SelectionModel getSelection() {
+        return mSelection;
+    }
+
+    private boolean isSelectingAcrossDirectories() {
+        return selectAcrossDirectories && allowMultiple;
+    }
+
+    /**
+     * @return full paths of the items selected in all directories, including the shown one,
+     * see {@link #setSelectAcrossDirectories(boolean)}
+     */
+    @NonNull
+    @Override
+    public List<String> getBasketPaths() {
+        storeSelectionInBasket();
+        return mBasket.getPaths();
+    }
+
+    /**
+     * Record the selection of the directory the adapter shows, before its items are replaced.
+     * Shown items are removed first, so that they only remain if they are still selected.
+     */
+    private void storeSelectionInBasket() {
+        if (!isSelectingAcrossDirectories() || mSelectionPath == null || mAdapter == null) {
+            return;
         }
-        return null;
+        final List<T> shown = mAdapter.getShownItems();
+        if (shown != null && !mBasket.isEmpty()) {
+            for (int i = 0; i < shown.size(); i++) {
+                mBasket.remove(getFullPath(shown.get(i)));
+            }
+        }
+        for (T item : getCheckedItems()) {
+            mBasket.add(getFullPath(item));
+        }
+    }
+
+    /**
+     * Select the items which were selected before the directory was last left.
+     */
+    private void restoreSelectionFromBasket() {
+        if (!isSelectingAcrossDirectories() || mBasket.isEmpty() || mAdapter == null) {
+            return;
+        }
+        final List<T> shown = mAdapter.getShownItems();
+        if (shown == null) {
+            return;
+        }
+        for (int i = 0; i < shown.size(); i++) {
+            if (mBasket.contains(getFullPath(shown.get(i)))) {
+                mSelection.setSelected(i, true);
+            }
+        }
+    }
+
+    /**
+     * Called when items were removed from the selection through the {@link BasketFragment}.
+     *
+     * @param removed full paths of the removed items
+     */
+    @Override
+    public void onBasketPruned(@NonNull List<String> removed) {
+        final HashSet<String> paths = new HashSet<>(removed);
+        for (String path : removed) {
+            mBasket.remove(path);
+        }
+        if (mAdapter == null) {
+            return;
+        }
+        for (int i = mSelection.nextSelected(0); i >= 0; i = mSelection.nextSelected(i + 1)) {
+            final T item = mAdapter.peekItem(i);
+            if (item != null && paths.contains(getFullPath(item))) {
+                mSelection.setSelected(i, false);
+            }
+        }
+        mAdapter.notifySelectionChanged();
     }
 
+    /**
+     * Convert a selection of several items, when it is returned. Called on a background
+     * thread, since selections may be large. Converts every item with {@link #toUri(Object)}
+     * by default, override to convert them together more cheaply.
+     *
+     * @param files which were selected
+     * @return a Uri for every item, in the same order
+     */
     protected
     @NonNull
     List<Uri> toUri(@NonNull Iterable<T> files) {
@@ -416,6 +898,10 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
                         .getBoolean(KEY_ALLOW_EXISTING_FILE, allowExistingFile);
                 singleClick = savedInstanceState
                         .getBoolean(KEY_SINGLE_CLICK, singleClick);
+                sortMode = savedInstanceState.getInt(KEY_SORT_MODE, sortMode);
+                typeFilter = readTypeFilter(savedInstanceState, typeFilter);
+                selectAcrossDirectories = savedInstanceState
+                        .getBoolean(KEY_SELECT_ACROSS_DIRECTORIES, selectAcrossDirectories);
 
                 String path = savedInstanceState.getString(KEY_CURRENT_PATH);
                 if (path != null) {
@@ -431,6 +917,8 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
                         .getBoolean(KEY_ALLOW_EXISTING_FILE, allowExistingFile);
                 singleClick = getArguments()
                         .getBoolean(KEY_SINGLE_CLICK, singleClick);
+                sortMode = getArguments().getInt(KEY_SORT_MODE, sortMode);
+                typeFilter = readTypeFilter(getArguments(), typeFilter);
                 if (getArguments().containsKey(KEY_START_PATH)) {
                     String path = getArguments().getString(KEY_START_PATH);
                     if (path != null) {
@@ -474,6 +962,31 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
 
         MenuItem item = menu.findItem(R.id.nnf_action_createdir);
         item.setVisible(allowCreateDir);
+        menu.findItem(R.id.nnf_action_basket).setVisible(isSelectingAcrossDirectories());
+    }
+
+    @Override
+    public void onPrepareOptionsMenu(@NonNull Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        final int id;
+        switch (sortMode) {
+            case SORT_SIZE:
+                id = R.id.nnf_action_sort_size;
+                break;
+            case SORT_MODIFIED:
+                id = R.id.nnf_action_sort_modified;
+                break;
+            case SORT_TYPE:
+                id = R.id.nnf_action_sort_type;
+                break;
+            default:
+                id = R.id.nnf_action_sort_name;
+                break;
+        }
+        MenuItem item = menu.findItem(id);
+        if (item != null) {
+            item.setChecked(true);
+        }
     }
 
     @Override
@@ -485,6 +998,21 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
                         AbstractFilePickerFragment.this);
             }
             return true;
+        } else if (R.id.nnf_action_basket == menuItem.getItemId()) {
+            BasketFragment.showDialog(AbstractFilePickerFragment.this);
+            return true;
+        } else if (R.id.nnf_action_sort_name == menuItem.getItemId()) {
+            setSortMode(SORT_NAME);
+            return true;
+        } else if (R.id.nnf_action_sort_size == menuItem.getItemId()) {
+            setSortMode(SORT_SIZE);
+            return true;
+        } else if (R.id.nnf_action_sort_modified == menuItem.getItemId()) {
+            setSortMode(SORT_MODIFIED);
+            return true;
+        } else if (R.id.nnf_action_sort_type == menuItem.getItemId()) {
+            setSortMode(SORT_TYPE);
+            return true;
         } else {
             return false;
         }
@@ -499,6 +1027,12 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         b.putBoolean(KEY_ALLOW_DIR_CREATE, allowCreateDir);
         b.putBoolean(KEY_SINGLE_CLICK, singleClick);
         b.putInt(KEY_MODE, mode);
+        b.putInt(KEY_SORT_MODE, sortMode);
+        b.putBoolean(KEY_SELECT_ACROSS_DIRECTORIES, selectAcrossDirectories);
+        if (typeFilter != null) {
+            b.putStringArray(KEY_EXTENSIONS, typeFilter.getExtensions());
+            b.putStringArray(KEY_MIME_TYPES, typeFilter.getMimeTypes());
+        }
         super.onSaveInstanceState(b);
     }
 
@@ -506,6 +1040,7 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
     public void onDetach() {
         super.onDetach();
         mListener = null;
+        cancelLoad();
     }
 
     /**
@@ -519,12 +1054,153 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
     protected void refresh(@NonNull T nextPath) {
         if (hasPermission(nextPath)) {
             mCurrentPath = nextPath;
+            mLoadGeneration++;
+            mPendingCacheKey = null;
+            mShowingStale = false;
+            mPendingChanged.clear();
+            mPendingRemoved.clear();
+            final PagedSource<T> pagedSource = getPagedSource(nextPath);
+            if (pagedSource != null && mAdapter instanceof PagedFileItemAdapter) {
+                // Drop any load in progress, the source lists the directory itself
+                isLoading = false;
+                getLoaderManager().destroyLoader(0);
+                cancelLoad();
+                onPagedSourceLoaded(pagedSource);
+                return;
+            }
+            if (useListingCache) {
+                final String key = getListingCacheKey(nextPath);
+                final long stamp = getListingStamp(nextPath);
+                final List<T> cached = ListingCache.getInstance().get(key, stamp);
+                if (cached != null) {
+                    // Drop any load in progress, the cached listing is current
+                    isLoading = false;
+                    getLoaderManager().destroyLoader(0);
+                    cancelLoad();
+                    showListing(cached);
+                    return;
+                }
+                mPendingCacheKey = key;
+                mPendingCachePath = getFullPath(nextPath);
+                mPendingCacheStamp = stamp;
+
+                if (staleWhileRevalidate) {
+                    final List<T> stale = ListingCache.getInstance().getStale(key);
+                    if (stale != null) {
+                        showListing(stale);
+                        mShowingStale = true;
+                    }
+                }
+            }
             isLoading = true;
+            startLoad();
+        } else {
+            handlePermission(nextPath);
+        }
+    }
+
+    /**
+     * List the current directory, cancelling any load in progress.
+     */
+    private void startLoad() {
+        cancelLoad();
+        if (mLoadEngine == null) {
             getLoaderManager()
                     .restartLoader(0, null, AbstractFilePickerFragment.this);
         } else {
-            handlePermission(nextPath);
+            mActiveLoader = null;
+            mActiveGeneration = mLoadGeneration;
+            mLoadRequest = mLoadEngine.submit(mLoadGeneration, newLoadTask(), loadTimeoutMs,
+                    mLoadCallback);
+        }
+    }
+
+    private void cancelLoad() {
+        if (mLoadRequest != null) {
+            mLoadRequest.cancel();
+            mLoadRequest = null;
+        }
+    }
+
+    /**
+     * Create the task which lists the current directory when loads run on an executor. Called
+     * on the main thread, right before the load starts.
+     * <p/>
+     * By default this adapts the loader returned by {@link #getLoader()}, which must be an
+     * {@link AsyncTaskLoader} that is ready to load once constructed. Its
+     * {@link AsyncTaskLoader#loadInBackground()} is called on the executor, and
+     * {@link AsyncTaskLoader#cancelLoadInBackground()} when the load is cancelled. That may
+     * happen before loadInBackground() has started, where
+     * {@link AsyncTaskLoader#isLoadInBackgroundCanceled()} stays false, so the loader must
+     * remember the cancel itself. Override to list without a loader.
+     *
+     * @return a task listing the current directory
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    protected LoadEngine.Task<T> newLoadTask() {
+        final Loader<List<T>> loader = getLoader();
+        if (!(loader instanceof AsyncTaskLoader)) {
+            throw new IllegalStateException("Override newLoadTask() to load without an AsyncTaskLoader");
         }
+        final AsyncTaskLoader<List<T>> asyncLoader = (AsyncTaskLoader<List<T>>) loader;
+        return signal -> {
+            signal.setOnCancelListener(asyncLoader::cancelLoadInBackground);
+            final List<T> data = asyncLoader.loadInBackground();
+            return data == null ? new ArrayList<T>() : data;
+        };
+    }
+
+    /**
+     * Called when a load on the executor failed or timed out. The default implementation
+     * logs the error and finishes loading with whatever is already shown of the current
+     * directory, which is not cached.
+     *
+     * @param error thrown by the load, or a {@link java.util.concurrent.TimeoutException}
+     */
+    protected void onLoadFailed(@NonNull Exception error) {
+        Log.w(TAG, "Failed to list " + getFullPath(mCurrentPath), error);
+        mPendingCacheKey = null;
+        final boolean shown = mFiles != null && getFullPath(mCurrentPath).equals(mShownPath);
+        onLoadFinished(null, shown ? mFiles : new ArrayList<T>());
+    }
+
+    /**
+     * Key under which the listing of a directory is cached. Must include everything which
+     * affects what the loader returns, since the cache is shared by all pickers in the process.
+     * Override and extend the key if you add your own filtering or sorting options.
+     *
+     * @param dir which is listed
+     * @return a key unique for the backend, the directory and the visible items
+     */
+    @NonNull
+    protected String getListingCacheKey(@NonNull T dir) {
+        final TypeFilter filter = typeFilter;
+        return getClass().getName() + '|' + mode + '|' + allowExistingFile + '|' + sortMode +
+                '|' + (filter == null ? "" : filter.getKey()) + '|' + getFullPath(dir);
+    }
+
+    /**
+     * A value which changes whenever the contents of a directory change, such as its
+     * modification time. A cached listing is only used if the stamp it was stored with equals
+     * the current stamp. By default no stamp is available, so cached listings are never used.
+     *
+     * @param dir which is about to be listed
+     * @return the current stamp of the directory, or {@link ListingCache#NO_STAMP}
+     */
+    protected long getListingStamp(@NonNull T dir) {
+        return ListingCache.NO_STAMP;
+    }
+
+    /**
+     * Rough estimate of the memory used by an item, used to limit the size of the cache.
+     *
+     * @param item in a listing
+     * @return estimated size in bytes
+     */
+    protected long estimateItemSize(@NonNull T item) {
+        // Object headers and fields, plus the characters of the path
+        return 64L + 2L * getFullPath(item).length();
     }
 
     /**
@@ -559,43 +1235,359 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
      */
     @Override
     public Loader<List<T>> onCreateLoader(final int id, final Bundle args) {
-        return getLoader();
+        mActiveLoader = getLoader();
+        mActiveGeneration = mLoadGeneration;
+        return mActiveLoader;
     }
 
     /**
-     * Called when a previously created loader has finished its load.
+     * Create a publisher for partial results. Loaders should call this when they are created,
+     * and pass every visible item to it while listing.
      *
-     * @param loader The Loader that has finished.
-     * @param data   The data generated by the Loader.
+     * @return a publisher for the load about to start, which does nothing if streaming is
+     * disabled
      */
-    @Override
-    public void onLoadFinished(final Loader<List<T>> loader, final List<T> data) {
-        isLoading = false;
-        mCheckedItems.clear();
-        mCheckedVisibleViewHolders.clear();
-        mFiles = data;
-        mAdapter.replaceAll(data);
-        if (mCurrentDirView != null) {
-            mCurrentDirView.setText(getFullPath(mCurrentPath));
+    @NonNull
+    protected ChunkPublisher<T> newChunkPublisher() {
+        return new ChunkPublisher<>(this, mLoadGeneration, streamingLoad,
+                streamingChunkSize, streamingChunkDelayMs);
+    }
+
+    /**
+     * Merge a sorted chunk of a listing in progress into the adapter. Chunks from a load which
+     * has been replaced or already finished are dropped.
+     */
+    void deliverChunk(int generation, @NonNull List<T> sortedChunk) {
+        // While a listing of the same directory is visible, for example a stale one, the
+        // complete result is applied as a diff instead
+        if (!isLoading || generation != mLoadGeneration || mAdapter == null || mShowingStale ||
+                getFullPath(mCurrentPath).equals(mShownPath)) {
+            return;
         }
-        // Stop loading now to avoid a refresh clearing the user's selections
-        getLoaderManager().destroyLoader( 0 );
+        if (mStreamedGeneration != generation) {
+            // First chunk of a new directory, drop the old contents
+            mStreamedGeneration = generation;
+            storeSelectionInBasket();
+            mSelectionPath = getFullPath(mCurrentPath);
+            mAdapter.replaceAll(new ArrayList<T>());
+            if (mCurrentDirView != null) {
+                mCurrentDirView.setText(getFullPath(mCurrentPath));
+            }
+        }
+        mAdapter.addAllSorted(sortedChunk, this::compareFiles);
+        onLoadProgress(sortedChunk);
     }
 
     /**
-     * Called when a previously created loader is being reset, and thus
-     * making its data unavailable.  The application should at this point
-     * remove any references it has to the Loader's data.
+     * Called on the main thread when a chunk of a listing in progress has been added to the
+     * adapter. Does nothing by default, override to for example hide a progress indicator.
      *
-     * @param loader The Loader that is being reset.
+     * @param chunk the items which were just added
      */
-    @Override
-    public void onLoaderReset(final Loader<List<T>> loader) {
-        isLoading = false;
+    protected void onLoadProgress(@NonNull List<T> chunk) {
+        // Nothing to do by default
     }
 
     /**
-     * @param position 0 - n, where the header has been subtracted
+     * Called when a previously created loader has finished its load.
+     *
+     * @param loader The Loader that has finished.
+     * @param data   The data generated by the Loader.
+     */
+    @Override
+    public void onLoadFinished(final Loader<List<T>> loader, final List<T> data) {
+        if (loader != mActiveLoader || mActiveGeneration != mLoadGeneration) {
+            // Result of a load which was replaced by navigating elsewhere
+            return;
+        }
+        isLoading = false;
+        if (mPendingCacheKey != null && mPendingCachePath.equals(getFullPath(mCurrentPath))) {
+            // The unfiltered items are cached along with the listing, and include its items.
+            // A compact listing is cached as it is, so its entries are never all created.
+            final List<T> all =
+                    data instanceof Listing ? ((Listing<T>) data).getUnfiltered() : data;
+            long bytes = data instanceof Listing ? ((Listing<T>) data).getRetainedBytes() : -1L;
+            if (bytes < 0L) {
+                bytes = 0L;
+                for (T item : all) {
+                    bytes += estimateItemSize(item);
+                }
+            }
+            ListingCache.getInstance().put(mPendingCacheKey, mPendingCacheStamp, data, bytes);
+        }
+        mPendingCacheKey = null;
+        mShowingStale = false;
+        showListing(data);
+        if (!mPendingChanged.isEmpty() || !mPendingRemoved.isEmpty()) {
+            final ArrayList<T> changed = new ArrayList<>(mPendingChanged.values());
+            final ArrayList<T> removed = new ArrayList<>(mPendingRemoved.values());
+            mPendingChanged.clear();
+            mPendingRemoved.clear();
+            applyChanges(changed, removed);
+        }
+        // Stop loading now, so the directory is not listed again whenever the fragment restarts
+        getLoaderManager().destroyLoader( 0 );
+    }
+
+    /**
+     * Show a listing of the current directory. If that directory is already shown, the
+     * listing is applied as an update so that selections are kept.
+     *
+     * @param data the items in the current directory, must not be modified
+     */
+    void showListing(@NonNull List<T> data) {
+        mRawFiles = data instanceof Listing ? ((Listing<T>) data).getUnfiltered() : null;
+        if (mFiles != null && getFullPath(mCurrentPath).equals(mShownPath)) {
+            onListingUpdated(data);
+        } else {
+            onListingLoaded(data);
+        }
+    }
+
+    /**
+     * Show a complete listing of a directory which was not shown before, either from the
+     * loader or from the cache. Selections are cleared.
+     *
+     * @param data the items in the current directory, must not be modified
+     */
+    protected void onListingLoaded(@NonNull List<T> data) {
+        mFiles = data;
+        mShownPath = getFullPath(mCurrentPath);
+        storeSelectionInBasket();
+        mSelectionPath = mShownPath;
+        if (!showCompactListing(data)) {
+            mAdapter.replaceAll(data);
+        }
+        restoreSelectionFromBasket();
+        if (mCurrentDirView != null) {
+            mCurrentDirView.setText(getFullPath(mCurrentPath));
+        }
+    }
+
+    /**
+     * Show a new listing of the directory which is already visible. Only the differences are
+     * applied to the adapter, and selected items which are still present stay selected, as
+     * the adapter moves the selection along with the differences.
+     *
+     * @param data the items in the current directory, must not be modified
+     */
+    protected void onListingUpdated(@NonNull List<T> data) {
+        if (mFiles == null) {
+            onListingLoaded(data);
+            return;
+        }
+
+        if (data instanceof Listing && ((Listing<T>) data).isCompact()) {
+            onCompactListingUpdated(data);
+            return;
+        }
+
+        // Keep the instances of unchanged items, so that bound view holders still refer to
+        // items in the list
+        final HashMap<String, T> previous = new HashMap<>();
+        for (T item : mFiles) {
+            previous.put(getFullPath(item), item);
+        }
+        final ArrayList<T> updated = new ArrayList<>(data.size());
+        for (T item : data) {
+            final T old = previous.get(getFullPath(item));
+            updated.add(old != null && isSameContent(old, item) ? old : item);
+        }
+        mFiles = updated;
+        // Diffing a large directory takes a while, so it is done off the main thread
+        mAdapter.submitList(updated, mItemCallback);
+        if (mCurrentDirView != null) {
+            mCurrentDirView.setText(getFullPath(mCurrentPath));
+        }
+    }
+
+    /**
+     * A compact listing creates its items when they are read, so there are no instances to
+     * keep. Selected items are looked up again by their path instead.
+     */
+    private void onCompactListingUpdated(@NonNull List<T> data) {
+        final HashSet<String> checkedPaths = new HashSet<>();
+        for (T item : getCheckedItems()) {
+            checkedPaths.add(getFullPath(item));
+        }
+        mFiles = data;
+        if (!showCompactListing(data)) {
+            mAdapter.submitList(data, mItemCallback);
+        } else if (!checkedPaths.isEmpty()) {
+            for (int i = 0; i < data.size(); i++) {
+                if (checkedPaths.contains(getFullPath(data.get(i)))) {
+                    mSelection.setSelected(i, true);
+                }
+            }
+        }
+        if (mCurrentDirView != null) {
+            mCurrentDirView.setText(getFullPath(mCurrentPath));
+        }
+    }
+
+    /**
+     * A compact listing is paged through instead of being copied into the adapter, which
+     * would create all of its items.
+     *
+     * @return true if the listing is shown
+     */
+    private boolean showCompactListing(@NonNull List<T> data) {
+        if (!(data instanceof Listing) || !((Listing<T>) data).isCompact() ||
+                !(mAdapter instanceof PagedFileItemAdapter)) {
+            return false;
+        }
+        ((PagedFileItemAdapter<T>) mAdapter).setSource(new ListPagedSource<>(data));
+        return true;
+    }
+
+    /**
+     * Show a directory which is paged through, see {@link #getPagedSource(Object)}. Such a
+     * directory is neither cached, nor filtered again or updated by
+     * {@link #applyChanges(List, List)}. Selections are cleared.
+     *
+     * @param source which lists the current directory
+     */
+    protected void onPagedSourceLoaded(@NonNull PagedSource<T> source) {
+        mFiles = null;
+        mRawFiles = null;
+        mShownPath = getFullPath(mCurrentPath);
+        storeSelectionInBasket();
+        mSelectionPath = mShownPath;
+        ((PagedFileItemAdapter<T>) mAdapter).setSource(source);
+        if (mCurrentDirView != null) {
+            mCurrentDirView.setText(getFullPath(mCurrentPath));
+        }
+    }
+
+    /**
+     * Apply individual changes to the current directory, without listing it again. Removed
+     * items are found by their path, changed items are inserted at their sorted position using
+     * binary search. The adapter is notified of every single insertion and removal. Selected
+     * items stay selected unless they were removed.
+     * <p/>
+     * Changes reported while a listing is loading are applied once it has been shown, since
+     * they may have happened after the directory was read.
+     *
+     * @param changed items which were added or modified, invisible ones are only recorded in
+     *                the unfiltered listing
+     * @param removed items which no longer exist, only their paths are used
+     */
+    protected void applyChanges(@NonNull List<T> changed, @NonNull List<T> removed) {
+        if (isLoading) {
+            // Only the latest state of every path matters
+            for (T item : changed) {
+                final String path = getFullPath(item);
+                mPendingRemoved.remove(path);
+                mPendingChanged.put(path, item);
+            }
+            for (T item : removed) {
+                final String path = getFullPath(item);
+                mPendingChanged.remove(path);
+                mPendingRemoved.put(path, item);
+            }
+            return;
+        }
+        if (mFiles == null || mAdapter == null) {
+            return;
+        }
+
+        // Modified items are removed and inserted again, since their position may change
+        final HashSet<String> gonePaths = new HashSet<>();
+        final HashSet<String> changedPaths = new HashSet<>();
+        for (T item : removed) {
+            gonePaths.add(getFullPath(item));
+        }
+        for (T item : changed) {
+            changedPaths.add(getFullPath(item));
+        }
+        gonePaths.addAll(changedPaths);
+
+        if (mRawFiles != null) {
+            final ArrayList<T> raw = new ArrayList<>(mRawFiles.size() + changed.size());
+            for (T item : mRawFiles) {
+                if (!gonePaths.contains(getFullPath(item))) {
+                    raw.add(item);
+                }
+            }
+            raw.addAll(changed);
+            mRawFiles = raw;
+        }
+
+        final HashSet<String> reselect = new HashSet<>();
+        final ArrayList<T> files = new ArrayList<>(mFiles);
+        // Backwards, so that positions of remaining items are unaffected
+        for (int i = files.size() - 1; i >= 0; i--) {
+            final T item = files.get(i);
+            final String path = getFullPath(item);
+            if (gonePaths.contains(path)) {
+                if (mSelection.isSelected(i) && changedPaths.contains(path)) {
+                    reselect.add(path);
+                }
+                files.remove(i);
+                mAdapter.removeItem(i);
+            }
+        }
+
+        for (T item : changed) {
+            if (!isItemVisible(item)) {
+                continue;
+            }
+            int pos = Collections.binarySearch(files, item, this::compareFiles);
+            if (pos < 0) {
+                pos = -(pos + 1);
+            }
+            files.add(pos, item);
+            mAdapter.insertItem(pos, item);
+            if (reselect.contains(getFullPath(item))) {
+                mSelection.setSelected(pos, true);
+            }
+        }
+
+        mFiles = files;
+    }
+
+    /**
+     * Used when applying updated listings. By default, items with the same full path are the
+     * same item.
+     *
+     * @param lhs an item from the old listing
+     * @param rhs an item from the new listing
+     * @return true if both represent the same file or directory
+     */
+    protected boolean isSameItem(@NonNull T lhs, @NonNull T rhs) {
+        return getFullPath(lhs).equals(getFullPath(rhs));
+    }
+
+    /**
+     * Used when applying updated listings, for items where {@link #isSameItem} is true. If
+     * the contents differ, the item is rebound. Override if you display more than the name.
+     * Both this and {@link #isSameItem} may be called on a background thread.
+     *
+     * @param lhs an item from the old listing
+     * @param rhs an item from the new listing
+     * @return true if the item would be displayed the same way
+     */
+    protected boolean isSameContent(@NonNull T lhs, @NonNull T rhs) {
+        return isDir(lhs) == isDir(rhs) && getName(lhs).equals(getName(rhs));
+    }
+
+    /**
+     * Called when a previously created loader is being reset, and thus
+     * making its data unavailable.  The application should at this point
+     * remove any references it has to the Loader's data.
+     *
+     * @param loader The Loader that is being reset.
+     */
+    @Override
+    public void onLoaderReset(final Loader<List<T>> loader) {
+        if (loader == mActiveLoader) {
+            isLoading = false;
+            mActiveLoader = null;
+        }
+    }
+
+    /**
+     * @param position 0 - n, where the header has been subtracted
      * @param data     the actual file or directory
      * @return an integer greater than 0
      */
@@ -613,6 +1605,34 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         viewHolder.text.setText("..");
     }
 
+    /**
+     * By default every directory is listed completely by the loader. Override to page through
+     * directories of backends which can list them in parts, like {@link CursorPagedSource}.
+     * Paged items are shown in the order of the source, which should apply
+     * {@link #isItemVisible(Object)} itself.
+     *
+     * @param dir which is about to be shown
+     * @return null
+     */
+    @Nullable
+    @Override
+    public PagedSource<T> getPagedSource(@NonNull T dir) {
+        return null;
+    }
+
+    /**
+     * Shows an empty row, which can not be clicked.
+     *
+     * @param vh       of type {@link LogicHandler#VIEWTYPE_DIR}
+     * @param position 0 - n, where the header has been subtracted
+     */
+    @Override
+    public void onBindPlaceholderViewHolder(@NonNull DirViewHolder vh, int position) {
+        vh.file = null;
+        vh.icon.setVisibility(View.GONE);
+        vh.text.setText("");
+    }
+
     /**
      * @param parent   Containing view
      * @param viewType which the ViewHolder will contain
@@ -640,6 +1660,9 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
     }
 
     /**
+     * Called for every row which scrolls into view, so it must not allocate. The name and
+     * type of the item should be answered from memory, like {@link FileEntry} does.
+     *
      * @param vh       to bind data from either a file or directory
      * @param position 0 - n, where the header has been subtracted
      * @param data     the file or directory which this item represents
@@ -650,28 +1673,148 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         vh.icon.setVisibility(isDir(data) ? View.VISIBLE : View.GONE);
         vh.text.setText(getName(data));
 
+        onBindSelection(vh, position, data);
+    }
+
+    /**
+     * Called instead of a full bind when only the selection may have changed, see
+     * {@link FileItemAdapter#PAYLOAD_SELECTION}.
+     *
+     * @param vh       which was bound to the item before
+     * @param position 0 - n, where the header has been subtracted
+     * @param data     the file or directory which this item represents
+     */
+    @Override
+    public void onBindSelection(@NonNull DirViewHolder vh, int position, @NonNull T data) {
         if (isCheckable(data)) {
-            if (mCheckedItems.contains(data)) {
-                mCheckedVisibleViewHolders.add((CheckableViewHolder) vh);
-                ((CheckableViewHolder) vh).checkbox.setChecked(true);
-            } else {
-                //noinspection SuspiciousMethodCalls
-                mCheckedVisibleViewHolders.remove(vh);
-                ((CheckableViewHolder) vh).checkbox.setChecked(false);
-            }
+            ((CheckableViewHolder) vh).checkbox.setChecked(mSelection.isSelected(position));
         }
     }
 
     /**
      * Animate de-selection of visible views and clear
-     * selected set.
+     * selected set. Only the checkboxes of visible rows are bound again.
      */
     public void clearSelections() {
-        for (CheckableViewHolder vh : mCheckedVisibleViewHolders) {
-            vh.checkbox.setChecked(false);
+        if (mSelection.isEmpty()) {
+            return;
+        }
+        mSelection.clear();
+        if (mAdapter != null) {
+            mAdapter.notifySelectionChanged();
         }
-        mCheckedVisibleViewHolders.clear();
-        mCheckedItems.clear();
+    }
+
+    /**
+     * Select every item in the current directory which can be selected, if several items may
+     * be selected. Only the checkboxes of visible rows are bound again. Directories which are
+     * paged through from a backend are not in memory completely, so nothing is selected in
+     * them.
+     */
+    public void selectAll() {
+        final SelectionModel checkable = getCheckableMask();
+        if (checkable == null) {
+            return;
+        }
+        mSelection.select(checkable);
+        mAdapter.notifySelectionChanged();
+    }
+
+    /**
+     * Select the items which are not selected and deselect the others, of the items which can
+     * be selected. Like {@link #selectAll()}, only possible if several items may be selected.
+     */
+    public void invertSelection() {
+        final SelectionModel checkable = getCheckableMask();
+        if (checkable == null) {
+            return;
+        }
+        mSelection.invert(checkable);
+        mAdapter.notifySelectionChanged();
+    }
+
+    /**
+     * Select the items in a range which can be selected, for example between the item
+     * selected last and one which was shift clicked, or the items a drag went over. Like
+     * {@link #selectAll()}, only possible if several items may be selected.
+     *
+     * @param from first position, inclusive, where the header has been subtracted
+     * @param to   last position, inclusive, may be smaller than from
+     */
+    public void selectRange(int from, int to) {
+        final SelectionModel checkable = getCheckableMask();
+        if (checkable == null) {
+            return;
+        }
+        final int start = Math.max(0, Math.min(from, to));
+        final int end = Math.min(mSelection.size(), Math.max(from, to) + 1);
+        if (start >= end) {
+            return;
+        }
+        // Items in the range which can not be selected are left out
+        final SelectionModel range = new SelectionModel();
+        range.reset(mSelection.size());
+        range.setRange(start, end, true);
+        range.retain(checkable);
+        mSelection.select(range);
+        mAdapter.notifySelectionChanged();
+    }
+
+    /**
+     * Select the items which can be selected and whose name matches a pattern completely,
+     * such as {@code Pattern.compile(".*\\.jpe?g", Pattern.CASE_INSENSITIVE)}. Like
+     * {@link #selectAll()}, only possible if several items may be selected.
+     *
+     * @param pattern which names are matched against
+     */
+    public void selectMatching(@NonNull Pattern pattern) {
+        final SelectionModel checkable = getCheckableMask();
+        if (checkable == null) {
+            return;
+        }
+        final List<T> items = mAdapter.getShownItems();
+        final SelectionModel matching = new SelectionModel();
+        matching.reset(items.size());
+        final Matcher matcher = pattern.matcher("");
+        for (int i = checkable.nextSelected(0); i >= 0; i = checkable.nextSelected(i + 1)) {
+            if (matcher.reset(getName(items.get(i))).matches()) {
+                matching.setSelected(i, true);
+            }
+        }
+        mSelection.select(matching);
+        mAdapter.notifySelectionChanged();
+    }
+
+    /**
+     * Which shown items can be selected only changes with the listing, so it is computed once
+     * and bulk selections are then made a word at a time.
+     *
+     * @return the positions which can be selected, or null if several items may not be
+     * selected or the shown items are not all in memory
+     */
+    @Nullable
+    private SelectionModel getCheckableMask() {
+        if (!allowMultiple || mAdapter == null) {
+            return null;
+        }
+        final List<T> items = mAdapter.getShownItems();
+        if (items == null || items.size() != mSelection.size()) {
+            return null;
+        }
+        if (mCheckableMask == null || mCheckableMaskGeneration != mSelection.getGeneration() ||
+                mCheckableMaskMode != mode) {
+            final SelectionModel mask = new SelectionModel();
+            mask.reset(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                if (isCheckable(items.get(i))) {
+                    mask.setSelected(i, true);
+                }
+            }
+            mCheckableMask = mask;
+            mCheckableMaskGeneration = mSelection.getGeneration();
+            mCheckableMaskMode = mode;
+        }
+        return mCheckableMask;
     }
 
 
@@ -690,7 +1833,8 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
      * directory is /foo/bar/, then goUp() will change the current directory to /foo/. It is up to
      * the caller to not call this in vain, e.g. if you are already at the root.
      * <p/>
-     * Currently selected items are cleared by this operation.
+     * Currently selected items are cleared by this operation, unless they are kept, see
+     * {@link #setSelectAcrossDirectories(boolean)}.
      */
     public void goUp() {
         goToDir(getParent(mCurrentPath));
@@ -712,7 +1856,8 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
      * Cab be used by the list to determine whether a file should be displayed or not.
      * Default behavior is to always display folders. If files can be selected,
      * then files are also displayed. In case a new file is supposed to be selected,
-     * the {@link #allowExistingFile} determines if existing files are visible
+     * the {@link #allowExistingFile} determines if existing files are visible. Files are only
+     * displayed if they pass the type filter, see {@link #setTypeFilter(TypeFilter)}.
      *
      * @param file either a directory or file.
      * @return True if item should be visible in the picker, false otherwise
@@ -720,24 +1865,198 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
     protected boolean isItemVisible(final T file) {
         return (isDir(file) ||
                 (mode == MODE_FILE || mode == MODE_FILE_AND_DIR) ||
-                (mode == MODE_NEW_FILE && allowExistingFile));
+                (mode == MODE_NEW_FILE && allowExistingFile)) && isAcceptedType(file);
+    }
+
+    /**
+     * @param file either a directory or file
+     * @return true for directories, and for files which pass the type filter
+     */
+    protected boolean isAcceptedType(@NonNull T file) {
+        final TypeFilter filter = typeFilter;
+        return filter == null || isDir(file) || filter.accepts(getName(file));
+    }
+
+    /**
+     * Compare two items to determine their relative sort order. This follows the usual
+     * comparison interface. Override to determine your own custom sort order.
+     * <p/>
+     * Default behaviour is to place directories before files, but sort them alphabetically
+     * otherwise, see {@link #setNameSorter(NameSorter)}.
+     *
+     * @param lhs item on the "left-hand side"
+     * @param rhs item on the "right-hand side"
+     * @return -1 if if lhs should be placed before rhs, 0 if they are equal,
+     * and 1 if rhs should be placed before lhs
+     */
+    protected int compareFiles(@NonNull T lhs, @NonNull T rhs) {
+        final int result = compareAttributes(lhs, rhs);
+        return result != 0 ? result :
+                nameSorter.compare(isDir(lhs), getName(lhs), isDir(rhs), getName(rhs));
+    }
+
+    /**
+     * Compare the attribute selected by the sort mode, names are not compared.
+     */
+    private int compareAttributes(@NonNull T lhs, @NonNull T rhs) {
+        final boolean lhsDir = isDir(lhs);
+        if (lhsDir != isDir(rhs)) {
+            return lhsDir ? -1 : 1;
+        }
+        switch (sortMode) {
+            case SORT_SIZE:
+                return compareLongs(getSize(lhs), getSize(rhs));
+            case SORT_MODIFIED:
+                return compareLongs(getLastModified(rhs), getLastModified(lhs));
+            case SORT_TYPE:
+                return getType(lhs).compareTo(getType(rhs));
+            default:
+                return 0;
+        }
+    }
+
+    private static int compareLongs(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+
+    /**
+     * Used by {@link #SORT_SIZE}. Called on the loader thread for every item, so it should
+     * answer from attributes read while listing instead of asking the backend again.
+     *
+     * @param item to get the size of
+     * @return the size in bytes, by default 0 which leaves items in order of their names
+     */
+    protected long getSize(@NonNull T item) {
+        return 0L;
+    }
+
+    /**
+     * Used by {@link #SORT_MODIFIED}. Called on the loader thread for every item, so it
+     * should answer from attributes read while listing instead of asking the backend again.
+     *
+     * @param item to get the modification time of
+     * @return milliseconds since the epoch, by default 0 which leaves items in order of
+     * their names
+     */
+    protected long getLastModified(@NonNull T item) {
+        return 0L;
+    }
+
+    /**
+     * Used by {@link #SORT_TYPE}.
+     *
+     * @param item to get the type of
+     * @return the lower case extension of files, without the dot, or an empty string
+     */
+    @NonNull
+    protected String getType(@NonNull T item) {
+        if (isDir(item)) {
+            return "";
+        }
+        final String name = getName(item);
+        final int dot = name.lastIndexOf('.');
+        return dot <= 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Sort a listing in the order given by {@link #compareFiles(Object, Object)}. Loaders
+     * call this on their background thread.
+     * <p/>
+     * The items are first sorted on keys computed once per item by the name sorter. Then the
+     * order is confirmed with compareFiles(), which only takes one comparison per item unless
+     * it has been overridden with a different order.
+     *
+     * @param files to sort in place
+     */
+    protected void sortFiles(@NonNull List<T> files) {
+        final boolean parallel = isParallel(files.size());
+        if (parallel) {
+            nameSorter.parallelSort(files, this);
+        } else {
+            nameSorter.sort(files, this);
+        }
+        final int mode = sortMode;
+        if (mode != SORT_NAME) {
+            sortByAttribute(files, mode, parallel);
+        }
+        Collections.sort(files, this::compareFiles);
+    }
+
+    /**
+     * Stable sort on the attribute of the sort mode, read once per item. Items which are
+     * equal in it keep their order by name.
+     */
+    @SuppressWarnings("unchecked")
+    private void sortByAttribute(@NonNull List<T> files, int mode, boolean parallel) {
+        final AttributeKey<T>[] keys = new AttributeKey[files.size()];
+        for (int i = 0; i < keys.length; i++) {
+            final T item = files.get(i);
+            switch (mode) {
+                case SORT_SIZE:
+                    keys[i] = new AttributeKey<>(item, isDir(item), getSize(item), "");
+                    break;
+                case SORT_MODIFIED:
+                    keys[i] = new AttributeKey<>(item, isDir(item), -getLastModified(item), "");
+                    break;
+                default:
+                    keys[i] = new AttributeKey<>(item, isDir(item), 0L, getType(item));
+                    break;
+            }
+        }
+        if (parallel) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            files.set(i, keys[i].item);
+        }
+    }
+
+    /**
+     * Turn everything a loader has read into the listing to show: drops the items which
+     * {@link #isItemVisible(Object)} rejects and sorts the rest with
+     * {@link #sortFiles(List)}. Large listings are processed on all cores, see
+     * {@link #setParallelThreshold(int)}.
+     * <p/>
+     * Called on the loader thread, isItemVisible() may be called from several threads.
+     *
+     * @param items everything in the directory, must not be modified afterwards
+     * @return the visible items, sorted
+     */
+    @NonNull
+    protected List<T> prepareListing(@NonNull List<T> items) {
+        final List<T> files;
+        if (isParallel(items.size())) {
+            files = ParallelListing.parallelFilter(items, this::isItemVisible);
+        } else {
+            files = ParallelListing.filter(items, this::isItemVisible);
+        }
+        sortFiles(files);
+        // Keep everything, so the listing can be filtered again without the loader
+        return new FilteredListing<>(items, files);
+    }
+
+    private boolean isParallel(int size) {
+        return size >= parallelThreshold && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
     }
 
     /**
      * Browses to the designated directory. It is up to the caller verify that the argument is
-     * in fact a directory. If another directory is in the process of being loaded, this method
-     * will not start another load.
+     * in fact a directory. If another directory is in the process of being loaded, that load
+     * is cancelled and its result is dropped.
      * <p/>
-     * Currently selected items are cleared by this operation.
+     * Currently selected items are cleared by this operation, unless they are kept, see
+     * {@link #setSelectAcrossDirectories(boolean)}.
      *
      * @param file representing the target directory.
      */
     public void goToDir(@NonNull T file) {
-        if (!isLoading) {
-            mCheckedItems.clear();
-            mCheckedVisibleViewHolders.clear();
-            refresh(file);
+        // Otherwise the selection is stored once the directory is replaced
+        if (!isSelectingAcrossDirectories()) {
+            clearSelections();
         }
+        refresh(file);
     }
 
     /**
@@ -794,18 +2113,17 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
      * @param viewHolder for the item containing the checkbox.
      */
     public void onClickCheckBox(@NonNull CheckableViewHolder viewHolder) {
-        if (mCheckedItems.contains(viewHolder.file)) {
-            viewHolder.checkbox.setChecked(false);
-            mCheckedItems.remove(viewHolder.file);
-            mCheckedVisibleViewHolders.remove(viewHolder);
-        } else {
-            if (!allowMultiple) {
-                clearSelections();
-            }
-            viewHolder.checkbox.setChecked(true);
-            mCheckedItems.add(viewHolder.file);
-            mCheckedVisibleViewHolders.add(viewHolder);
+        final int position = viewHolder.getBindingAdapterPosition();
+        // Not bound to an item right now, for example while it is being removed
+        if (position == RecyclerView.NO_POSITION || position == 0) {
+            return;
         }
+        // Subtract the header
+        if (!mSelection.isSelected(position - 1) && !allowMultiple) {
+            clearSelections();
+        }
+        mSelection.toggle(position - 1);
+        mAdapter.notifySelectionChanged(position);
     }
 
     /**
@@ -855,11 +2173,22 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         public T file;
 
         public DirViewHolder(View v) {
+            this(v, v.findViewById(R.id.item_icon), (TextView) v.findViewById(android.R.id.text1));
+        }
+
+        /**
+         * For layouts whose views have other ids.
+         *
+         * @param v    the whole row
+         * @param icon shown for directories
+         * @param text showing the name
+         */
+        public DirViewHolder(View v, View icon, TextView text) {
             super(v);
             v.setOnClickListener(this);
             v.setOnLongClickListener(this);
-            icon = v.findViewById(R.id.item_icon);
-            text = (TextView) v.findViewById(android.R.id.text1);
+            this.icon = icon;
+            this.text = text;
         }
 
         /**
@@ -869,7 +2198,10 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
          */
         @Override
         public void onClick(View v) {
-            onClickDir(v, this);
+            // Placeholders of paged items have no file yet
+            if (file != null) {
+                onClickDir(v, this);
+            }
         }
 
         /**
@@ -880,7 +2212,7 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
          */
         @Override
         public boolean onLongClick(View v) {
-            return onLongClickDir(v, this);
+            return file != null && onLongClickDir(v, this);
         }
     }
 
@@ -889,10 +2221,23 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         public CheckBox checkbox;
 
         public CheckableViewHolder(View v) {
-            super(v);
+            this(v, v.findViewById(R.id.item_icon), (TextView) v.findViewById(android.R.id.text1),
+                    (CheckBox) v.findViewById(R.id.checkbox));
+        }
+
+        /**
+         * For layouts whose views have other ids.
+         *
+         * @param v        the whole row
+         * @param icon     shown for directories
+         * @param text     showing the name
+         * @param checkbox showing if the item is selected
+         */
+        public CheckableViewHolder(View v, View icon, TextView text, CheckBox checkbox) {
+            super(v, icon, text);
             boolean nf = mode == MODE_NEW_FILE;
 
-            checkbox = (CheckBox) v.findViewById(R.id.checkbox);
+            this.checkbox = checkbox;
             checkbox.setVisibility((nf || singleClick) ? View.GONE : View.VISIBLE);
             checkbox.setOnClickListener(new View.OnClickListener() {
                 @Override
@@ -924,4 +2269,87 @@ public abstract class AbstractFilePickerFragment<T> extends Fragment
         }
     }
 
+    /**
+     * A listing prepared by {@link #prepareListing(List)}, which remembers what it was
+     * filtered from, see {@link #refilter()}. Listings can not be modified, so they are cached
+     * as they are, see {@link ListingCache#put}.
+     */
+    interface Listing<T> {
+        /**
+         * @return everything in the directory, must not be modified
+         */
+        @NonNull
+        List<T> getUnfiltered();
+
+        /**
+         * @return true if items are created whenever they are read, so there are no
+         * instances worth keeping
+         */
+        boolean isCompact();
+
+        /**
+         * @return memory used by the listing and its unfiltered items, or -1 if unknown
+         */
+        long getRetainedBytes();
+    }
+
+    private static final class FilteredListing<T> extends AbstractList<T>
+            implements RandomAccess, Listing<T> {
+        private final List<T> raw;
+        private final List<T> filtered;
+
+        FilteredListing(@NonNull List<T> raw, @NonNull List<T> filtered) {
+            this.raw = Collections.unmodifiableList(raw);
+            this.filtered = new ArrayList<>(filtered);
+        }
+
+        @Override
+        public T get(int index) {
+            return filtered.get(index);
+        }
+
+        @Override
+        public int size() {
+            return filtered.size();
+        }
+
+        @NonNull
+        @Override
+        public List<T> getUnfiltered() {
+            return raw;
+        }
+
+        @Override
+        public boolean isCompact() {
+            return false;
+        }
+
+        @Override
+        public long getRetainedBytes() {
+            return -1L;
+        }
+    }
+
+    private static final class AttributeKey<T> implements Comparable<AttributeKey<T>> {
+        final T item;
+        final boolean dir;
+        final long value;
+        final String type;
+
+        AttributeKey(T item, boolean dir, long value, @NonNull String type) {
+            this.item = item;
+            this.dir = dir;
+            this.value = value;
+            this.type = type;
+        }
+
+        @Override
+        public int compareTo(@NonNull AttributeKey<T> other) {
+            if (dir != other.dir) {
+                return dir ? -1 : 1;
+            }
+            final int result = compareLongs(value, other.value);
+            return result != 0 ? result : type.compareTo(other.type);
+        }
+    }
 }
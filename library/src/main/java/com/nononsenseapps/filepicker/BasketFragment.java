@@ -0,0 +1,125 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
+import androidx.fragment.app.DialogFragment;
+import androidx.fragment.app.Fragment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Lists the items selected in all directories, see
+ * {@link AbstractFilePickerFragment#setSelectAcrossDirectories(boolean)}. Items which are
+ * unchecked are removed from the selection when the dialog is confirmed.
+ * <p/>
+ * The dialog is a child of the fragment holding the basket, and reads the paths from it
+ * whenever it is created. The basket may hold thousands of paths, so only the unchecked ones
+ * are saved with the dialog's state.
+ */
+public class BasketFragment extends DialogFragment {
+
+    private static final String TAG = "basket_fragment";
+    private static final String KEY_UNCHECKED = "KEY_UNCHECKED";
+
+    private String[] paths = new String[0];
+    private boolean[] kept = new boolean[0];
+
+    public static <F extends Fragment & BasketHost> void showDialog(@NonNull final F host) {
+        new BasketFragment().show(host.getChildFragmentManager(), TAG);
+    }
+
+    @Nullable
+    private BasketHost getHost() {
+        final Fragment parent = getParentFragment();
+        return parent instanceof BasketHost ? (BasketHost) parent : null;
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        final BasketHost host = getHost();
+        paths = host == null ? new String[0] :
+                host.getBasketPaths().toArray(new String[0]);
+        kept = new boolean[paths.length];
+        final List<String> unchecked = savedInstanceState == null ? null :
+                savedInstanceState.getStringArrayList(KEY_UNCHECKED);
+        final HashSet<String> removed = new HashSet<>(
+                unchecked == null ? Collections.<String>emptyList() : unchecked);
+        for (int i = 0; i < paths.length; i++) {
+            kept[i] = !removed.contains(paths[i]);
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setTitle(R.string.nnf_basket)
+                .setMultiChoiceItems(paths, kept,
+                        new DialogInterface.OnMultiChoiceClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which,
+                                                boolean isChecked) {
+                                kept[which] = isChecked;
+                            }
+                        })
+                .setNegativeButton(R.string.nnf_basket_cancel, null)
+                .setPositiveButton(R.string.nnf_basket_ok,
+                        new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                final List<String> removed = getUnchecked();
+                                final BasketHost host = getHost();
+                                if (host != null && !removed.isEmpty()) {
+                                    host.onBasketPruned(removed);
+                                }
+                            }
+                        });
+        return builder.create();
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putStringArrayList(KEY_UNCHECKED, getUnchecked());
+    }
+
+    @NonNull
+    private ArrayList<String> getUnchecked() {
+        final ArrayList<String> removed = new ArrayList<>();
+        for (int i = 0; i < paths.length; i++) {
+            if (!kept[i]) {
+                removed.add(paths[i]);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Implemented by the fragment which shows the dialog, see {@link #showDialog}.
+     */
+    public interface BasketHost {
+        /**
+         * @return full paths of the selected items
+         */
+        @NonNull
+        List<String> getBasketPaths();
+
+        /**
+         * Called when the user removed items from the selection.
+         *
+         * @param removed full paths of the removed items
+         */
+        void onBasketPruned(@NonNull List<String> removed);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Makes many files canonical, like {@link File#getCanonicalFile()}, while resolving every
+ * directory only once. The canonical form of each parent directory is remembered, and a file
+ * in it is the canonical parent plus its name, unless the file is a symbolic link itself.
+ * <p/>
+ * Telling symbolic links apart takes java.nio.file, available from API 26, see
+ * {@link #platformDefault()}. Without it every file is resolved on its own. Instances are
+ * safe to use from several threads.
+ */
+class CanonicalFiles {
+
+    private final boolean mNio;
+    // Canonical file of every parent path seen
+    private final ConcurrentHashMap<String, File> mParents = new ConcurrentHashMap<>();
+
+    private CanonicalFiles(boolean nio) {
+        mNio = nio;
+    }
+
+    @NonNull
+    static CanonicalFiles platformDefault() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return nio();
+        } else {
+            return io();
+        }
+    }
+
+    /**
+     * @return an instance which resolves every file on its own
+     */
+    @NonNull
+    static CanonicalFiles io() {
+        return new CanonicalFiles(false);
+    }
+
+    /**
+     * @return an instance which resolves every directory once
+     */
+    @RequiresApi(Build.VERSION_CODES.O)
+    @NonNull
+    static CanonicalFiles nio() {
+        return new CanonicalFiles(true);
+    }
+
+    /**
+     * @param file an absolute file
+     * @return the same as {@link File#getCanonicalFile()}
+     */
+    @NonNull
+    File canonicalize(@NonNull File file) throws IOException {
+        final String parent = file.getParent();
+        final String name = file.getName();
+        if (!mNio || parent == null || name.isEmpty() || ".".equals(name) ||
+                "..".equals(name)) {
+            return file.getCanonicalFile();
+        }
+        File canonicalParent = mParents.get(parent);
+        if (canonicalParent == null) {
+            canonicalParent = new File(parent).getCanonicalFile();
+            mParents.put(parent, canonicalParent);
+        }
+        final File canonical = new File(canonicalParent, name);
+        // One lstat instead of one for every directory on the way
+        if (Files.isSymbolicLink(canonical.toPath())) {
+            return canonical.getCanonicalFile();
+        }
+        return canonical;
+    }
+}
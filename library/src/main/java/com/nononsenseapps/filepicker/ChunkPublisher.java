@@ -0,0 +1,89 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Used by loaders to show items on screen while a directory is still being listed.
+ * <p/>
+ * Items are collected from the loader thread and handed to the fragment in sorted chunks,
+ * either when enough items have been collected or when the oldest collected item has waited
+ * long enough. The fragment merges every chunk into the list it is displaying. If streaming
+ * is disabled in the fragment, all methods do nothing.
+ * <p/>
+ * Get an instance from {@link AbstractFilePickerFragment#newChunkPublisher()} when the
+ * loader is created.
+ *
+ * @param <T> the type which is used, for example a normal java File object.
+ */
+public class ChunkPublisher<T> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    public static final long DEFAULT_CHUNK_DELAY_MS = 50L;
+
+    private final AbstractFilePickerFragment<T> fragment;
+    private final int generation;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final long chunkDelayMs;
+    private final Handler handler;
+    private ArrayList<T> chunk = new ArrayList<>();
+    private long chunkStart = 0L;
+
+    ChunkPublisher(@NonNull AbstractFilePickerFragment<T> fragment, int generation,
+                   boolean enabled, int chunkSize, long chunkDelayMs) {
+        this.fragment = fragment;
+        this.generation = generation;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.chunkDelayMs = chunkDelayMs;
+        this.handler = enabled ? new Handler(Looper.getMainLooper()) : null;
+    }
+
+    /**
+     * Collect an item from the listing, items which are not visible are skipped. Call from the
+     * loader thread.
+     *
+     * @param item to show
+     */
+    public void add(@NonNull T item) {
+        if (!enabled || !fragment.isItemVisible(item)) {
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        if (chunk.isEmpty()) {
+            chunkStart = now;
+        }
+        chunk.add(item);
+        if (chunk.size() >= chunkSize || now - chunkStart >= chunkDelayMs) {
+            flush();
+        }
+    }
+
+    /**
+     * Publish the collected items right away, for example after a page of a remote listing
+     * has been read. Call from the loader thread.
+     */
+    public void flush() {
+        if (!enabled || chunk.isEmpty()) {
+            return;
+        }
+        final List<T> sorted = chunk;
+        chunk = new ArrayList<>();
+        // Sort here, so the main thread only has to merge
+        fragment.sortFiles(sorted);
+        handler.post(() -> fragment.deliverChunk(generation, sorted));
+    }
+}
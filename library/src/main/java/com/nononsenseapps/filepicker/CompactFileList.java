@@ -0,0 +1,234 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A listing of a single directory which stores its entries column by column instead of as
+ * objects: all names in one char array with an offset array, directory and hidden flags as
+ * bits, and sizes and modification times in long arrays. The parent directory is shared.
+ * <p/>
+ * {@link FileEntry} objects are only created when an entry is read, for example when its row
+ * is bound, so a huge directory costs a few dozen bytes per entry instead of several objects.
+ * Entries which are equal are not the same instance, which is fine since files compare by
+ * path.
+ * <p/>
+ * The visible entries are stored first, in sorted order, followed by the hidden ones, so the
+ * unfiltered listing shares the same storage.
+ */
+public final class CompactFileList extends AbstractList<File>
+        implements RandomAccess, AbstractFilePickerFragment.Listing<File> {
+
+    private final Storage storage;
+    private final int size;
+
+    private CompactFileList(@NonNull Storage storage, int size) {
+        this.storage = storage;
+        this.size = size;
+    }
+
+    /**
+     * @param all     entries of a directory, all with the same parent
+     * @param visible those of them to show, in order
+     * @return a compact copy of visible which also keeps all, or visible itself if the
+     * entries do not share a parent
+     */
+    @NonNull
+    public static List<File> compact(@NonNull List<File> all, @NonNull List<File> visible) {
+        if (all.isEmpty()) {
+            return visible;
+        }
+        final File parent = all.get(0).getParentFile();
+        if (parent == null) {
+            return visible;
+        }
+        int chars = 0;
+        final HashSet<String> visibleNames = new HashSet<>();
+        for (File file : visible) {
+            if (!parent.equals(file.getParentFile())) {
+                return visible;
+            }
+            visibleNames.add(file.getName());
+        }
+        for (File file : all) {
+            if (!parent.equals(file.getParentFile())) {
+                return visible;
+            }
+            chars += file.getName().length();
+        }
+
+        final Storage storage = new Storage(parent, all.size(), chars);
+        for (File file : visible) {
+            storage.add(file);
+        }
+        for (File file : all) {
+            if (!visibleNames.contains(file.getName())) {
+                storage.add(file);
+            }
+        }
+        return new CompactFileList(storage, visible.size());
+    }
+
+    /**
+     * Apply changes reported by a {@link DirectoryWatcher} to the unfiltered listing. The
+     * result is not sorted or filtered, it is meant to be prepared again.
+     *
+     * @param changed entries which were added or modified
+     * @param removed entries which no longer exist
+     * @return an unfiltered listing with the changes applied
+     */
+    @NonNull
+    public CompactFileList withChanges(@NonNull List<File> changed, @NonNull List<File> removed) {
+        final HashSet<String> gone = new HashSet<>();
+        int chars = storage.names.length;
+        for (File file : changed) {
+            gone.add(file.getName());
+            chars += file.getName().length();
+        }
+        for (File file : removed) {
+            gone.add(file.getName());
+        }
+
+        final Storage source = storage;
+        final Storage result = new Storage(source.parent, source.size + changed.size(), chars);
+        for (int row = 0; row < source.size; row++) {
+            if (gone.isEmpty() || !gone.contains(source.getName(row))) {
+                result.copy(source, row);
+            }
+        }
+        for (File file : changed) {
+            result.add(file);
+        }
+        return new CompactFileList(result, result.size);
+    }
+
+    @NonNull
+    @Override
+    public File get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return storage.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return all entries of the directory, sharing storage with this listing
+     */
+    @NonNull
+    @Override
+    public List<File> getUnfiltered() {
+        return size == storage.size ? this : new CompactFileList(storage, storage.size);
+    }
+
+    @Override
+    public boolean isCompact() {
+        return true;
+    }
+
+    @Override
+    public long getRetainedBytes() {
+        return storage.getRetainedBytes();
+    }
+
+    private static final class Storage {
+        // Object header and array length, roughly, on 64 bit runtimes
+        private static final long HEADER_BYTES = 16L;
+        // The list, the storage and its seven arrays
+        private static final int OBJECTS = 9;
+
+        final File parent;
+        final char[] names;
+        final int[] offsets;
+        // One bit per row
+        final long[] directories;
+        final long[] hidden;
+        final long[] lengths;
+        final long[] lastModified;
+        final int[] typeClasses;
+        int size = 0;
+        int chars = 0;
+
+        Storage(@NonNull File parent, int capacity, int chars) {
+            this.parent = parent;
+            this.names = new char[chars];
+            this.offsets = new int[capacity + 1];
+            this.directories = new long[(capacity + 63) >>> 6];
+            this.hidden = new long[(capacity + 63) >>> 6];
+            this.lengths = new long[capacity];
+            this.lastModified = new long[capacity];
+            this.typeClasses = new int[capacity];
+        }
+
+        void add(@NonNull File file) {
+            final String name = file.getName();
+            name.getChars(0, name.length(), names, chars);
+            final int typeClass =
+                    file instanceof FileEntry ? ((FileEntry) file).getTypeClass() : -1;
+            append(name.length(), file.isDirectory(), file.isHidden(), file.length(),
+                    file.lastModified(), typeClass);
+        }
+
+        void copy(@NonNull Storage from, int row) {
+            final int start = from.offsets[row];
+            final int length = from.offsets[row + 1] - start;
+            System.arraycopy(from.names, start, names, chars, length);
+            append(length, isSet(from.directories, row), isSet(from.hidden, row),
+                    from.lengths[row], from.lastModified[row], from.typeClasses[row]);
+        }
+
+        private void append(int nameLength, boolean directory, boolean isHidden, long length,
+                            long modified, int typeClass) {
+            final int row = size++;
+            chars += nameLength;
+            offsets[row + 1] = chars;
+            if (directory) {
+                directories[row >>> 6] |= 1L << row;
+            }
+            if (isHidden) {
+                hidden[row >>> 6] |= 1L << row;
+            }
+            lengths[row] = length;
+            lastModified[row] = modified;
+            typeClasses[row] = typeClass;
+        }
+
+        @NonNull
+        String getName(int row) {
+            return new String(names, offsets[row], offsets[row + 1] - offsets[row]);
+        }
+
+        @NonNull
+        FileEntry get(int row) {
+            final FileEntry entry = new FileEntry(parent, getName(row), isSet(directories, row),
+                    isSet(hidden, row), lengths[row], lastModified[row]);
+            entry.setTypeClass(typeClasses[row]);
+            return entry;
+        }
+
+        long getRetainedBytes() {
+            return 2L * names.length + 4L * offsets.length + 8L * directories.length +
+                    8L * hidden.length + 8L * lengths.length + 8L * lastModified.length +
+                    4L * typeClasses.length + HEADER_BYTES * OBJECTS;
+        }
+
+        private static boolean isSet(@NonNull long[] bits, int row) {
+            return (bits[row >>> 6] & (1L << row)) != 0;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link PagedSource} for backends which list a directory in batches, where every batch
+ * comes with a cursor to fetch the next one from, like Dropbox list folder cursors.
+ * <p/>
+ * Only the cursor and position of every batch is kept, not its items. A page which has been
+ * evicted is fetched again starting at the batch containing it, so memory stays flat however
+ * far the directory is scrolled. Items are shown in the order the backend returns them.
+ *
+ * @param <T> the type of items
+ * @param <C> the type of cursors, which must stay valid while the directory is shown
+ */
+public abstract class CursorPagedSource<T, C> implements PagedSource<T> {
+
+    // Cursor which each batch was fetched with, null for the first one
+    private final ArrayList<C> mCursors = new ArrayList<>();
+    // Position of the first item of each batch
+    private final ArrayList<Integer> mStarts = new ArrayList<>();
+    private C mNextCursor = null;
+    private volatile int mSize = 0;
+    private volatile boolean mHasMore = true;
+
+    /**
+     * Fetch a batch of items. Called on a background thread, never for two batches at once.
+     *
+     * @param cursor returned with the previous batch, or null for the first batch
+     * @return the items of the batch, which may be empty, and the cursor to the next one
+     * @throws Exception if the batch could not be fetched
+     */
+    @NonNull
+    protected abstract Batch<T, C> fetch(@Nullable C cursor) throws Exception;
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean hasMore() {
+        return mHasMore;
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<T> loadPage(int offset, int count) throws Exception {
+        final ArrayList<T> page = new ArrayList<>(count);
+        final int end = offset + count;
+        int batch;
+        int position;
+        if (offset < mSize) {
+            batch = batchAt(offset);
+            position = mStarts.get(batch);
+        } else if (mHasMore) {
+            batch = mCursors.size();
+            position = mSize;
+        } else {
+            return page;
+        }
+
+        while (position < end) {
+            final C cursor = batch < mCursors.size() ? mCursors.get(batch) : mNextCursor;
+            final Batch<T, C> result = fetch(cursor);
+            if (batch == mCursors.size()) {
+                // Seen for the first time
+                mCursors.add(cursor);
+                mStarts.add(position);
+                mNextCursor = result.nextCursor;
+                mSize = position + result.items.size();
+                mHasMore = result.hasMore;
+            }
+            for (T item : result.items) {
+                if (position >= offset && position < end) {
+                    page.add(item);
+                }
+                position++;
+            }
+            batch++;
+            if (batch == mCursors.size() && !mHasMore) {
+                break;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @return the last batch starting at or before the position, which must be known
+     */
+    private int batchAt(int position) {
+        int low = 0;
+        int high = mStarts.size() - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (mStarts.get(mid) <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A batch of items as returned by the backend.
+     */
+    public static final class Batch<T, C> {
+        final List<T> items;
+        final C nextCursor;
+        final boolean hasMore;
+
+        /**
+         * @param items      of the batch, in order
+         * @param nextCursor to fetch the next batch with
+         * @param hasMore    false if this is the last batch
+         */
+        public Batch(@NonNull List<T> items, @Nullable C nextCursor, boolean hasMore) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+            this.hasMore = hasMore;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Reads the contents of a local directory and turns every child into a {@link FileEntry}.
+ * <p/>
+ * Two engines are available. {@link #io()} uses java.io and works on all API levels, but
+ * needs a separate stat for each attribute. {@link #nio()} uses java.nio.file, available from
+ * API 26, and reads all attributes of an entry with a single stat.
+ */
+public abstract class DirectoryLister {
+
+    /**
+     * Receives the entries of a directory, in the order the filesystem returns them.
+     */
+    public interface Visitor {
+        /**
+         * @param entry in the directory being listed
+         * @return true to continue listing, false to stop early
+         */
+        boolean visit(@NonNull FileEntry entry);
+    }
+
+    /**
+     * @return the fastest engine available on this device
+     */
+    @NonNull
+    public static DirectoryLister platformDefault() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return nio();
+        } else {
+            return io();
+        }
+    }
+
+    /**
+     * @return an engine based on {@link File#list()}, available on all API levels
+     */
+    @NonNull
+    public static DirectoryLister io() {
+        return new IoDirectoryLister();
+    }
+
+    /**
+     * @return an engine based on {@link Files#newDirectoryStream(Path)}
+     */
+    @RequiresApi(Build.VERSION_CODES.O)
+    @NonNull
+    public static DirectoryLister nio() {
+        return new NioDirectoryLister();
+    }
+
+    /**
+     * List the directory, passing every entry to the visitor.
+     *
+     * @param dir     to list
+     * @param visitor receiving the entries
+     * @param stats   updated with the work done, may be null
+     * @return false if the directory could not be read, true otherwise
+     */
+    public abstract boolean list(@NonNull File dir, @NonNull Visitor visitor,
+                                 @Nullable ListingStats stats);
+
+    /**
+     * @return true if the file name marks a hidden file, same as {@link File#isHidden()} on
+     * Android but without asking the filesystem.
+     */
+    static boolean isHiddenName(@NonNull String name) {
+        return !name.isEmpty() && name.charAt(0) == '.';
+    }
+
+    private static class IoDirectoryLister extends DirectoryLister {
+        @Override
+        public boolean list(@NonNull File dir, @NonNull Visitor visitor,
+                            @Nullable ListingStats stats) {
+            final String[] names = dir.list();
+            if (stats != null) {
+                stats.engine = "io";
+                stats.directoryReads++;
+            }
+            if (names == null) {
+                return false;
+            }
+
+            for (String name : names) {
+                final File file = new File(dir, name);
+                // One stat for each call below, length is not interesting for directories
+                final boolean directory = file.isDirectory();
+                final long length = directory ? 0L : file.length();
+                final long lastModified = file.lastModified();
+                if (stats != null) {
+                    stats.entries++;
+                    stats.attributeReads += directory ? 2 : 3;
+                }
+                if (!visitor.visit(new FileEntry(dir, name, directory, isHiddenName(name),
+                        length, lastModified))) {
+                    break;
+                }
+            }
+            return true;
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private static class NioDirectoryLister extends DirectoryLister {
+        @Override
+        public boolean list(@NonNull File dir, @NonNull Visitor visitor,
+                            @Nullable ListingStats stats) {
+            if (stats != null) {
+                stats.engine = "nio";
+                stats.directoryReads++;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+                for (Path path : stream) {
+                    final String name = path.getFileName().toString();
+                    boolean directory = false;
+                    long length = 0L;
+                    long lastModified = 0L;
+                    // Type, size and modification time all come from the same stat
+                    try {
+                        final BasicFileAttributes attrs =
+                                Files.readAttributes(path, BasicFileAttributes.class);
+                        directory = attrs.isDirectory();
+                        length = directory ? 0L : attrs.size();
+                        lastModified = attrs.lastModifiedTime().toMillis();
+                    } catch (IOException ignored) {
+                        // Same as java.io, which reports unreadable entries as empty files
+                    }
+                    if (stats != null) {
+                        stats.entries++;
+                        stats.attributeReads++;
+                    }
+                    if (!visitor.visit(new FileEntry(dir, name, directory, isHiddenName(name),
+                            length, lastModified))) {
+                        break;
+                    }
+                }
+                return true;
+            } catch (IOException | SecurityException | DirectoryIteratorException |
+                    InvalidPathException e) {
+                // The iterator fails with an unchecked exception when a read fails midway
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.os.AsyncTask;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Watches a single directory and reports which entries were added, changed or removed,
+ * instead of requiring the whole directory to be listed again.
+ * <p/>
+ * Events are coalesced: the names touched during a debounce window, starting with the first
+ * event, are read from disk together and delivered as one batch on the main thread. Only the
+ * final state of every name matters, so a file which is created and deleted within the same
+ * window is simply reported as removed.
+ */
+public class DirectoryWatcher {
+
+    public static final long DEFAULT_DEBOUNCE_MS = 250L;
+    // Writes and attribute changes, like a new date, are included since size and date are
+    // sorted by. CLOSE_WRITE rather than MODIFY, so a file is read once it has been written.
+    public static final int DEFAULT_EVENTS = FileObserver.CREATE | FileObserver.DELETE |
+            FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE |
+            FileObserver.ATTRIB;
+
+    private final File dir;
+    private final long debounceMs;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final FileObserver observer;
+    // Guarded by itself
+    private final LinkedHashSet<String> pendingNames = new LinkedHashSet<>();
+    private final Runnable flushRunnable = this::flush;
+    private volatile boolean watching = false;
+
+    public DirectoryWatcher(@NonNull File dir, long debounceMs, @NonNull Listener listener) {
+        this(dir, DEFAULT_EVENTS, debounceMs, listener);
+    }
+
+    /**
+     * @param dir        directory to watch
+     * @param events     mask of {@link FileObserver} events to react to
+     * @param debounceMs how long to collect events before reporting them
+     * @param listener   called on the main thread with every batch
+     */
+    public DirectoryWatcher(@NonNull File dir, int events, long debounceMs,
+                            @NonNull Listener listener) {
+        this.dir = dir;
+        this.debounceMs = debounceMs;
+        this.listener = listener;
+        this.observer = new FileObserver(dir.getPath(), events) {
+            @Override
+            public void onEvent(int event, String path) {
+                onNameChanged(path);
+            }
+        };
+    }
+
+    @NonNull
+    public File getDirectory() {
+        return dir;
+    }
+
+    public void startWatching() {
+        watching = true;
+        observer.startWatching();
+    }
+
+    /**
+     * Stop watching. Batches which have not been delivered yet are dropped.
+     */
+    public void stopWatching() {
+        watching = false;
+        observer.stopWatching();
+        handler.removeCallbacks(flushRunnable);
+        synchronized (pendingNames) {
+            pendingNames.clear();
+        }
+    }
+
+    private void onNameChanged(String name) {
+        if (name == null || !watching) {
+            // Events about the directory itself have no name
+            return;
+        }
+        synchronized (pendingNames) {
+            if (pendingNames.isEmpty()) {
+                handler.postDelayed(flushRunnable, debounceMs);
+            }
+            pendingNames.add(name);
+        }
+    }
+
+    private void flush() {
+        final ArrayList<String> names;
+        synchronized (pendingNames) {
+            names = new ArrayList<>(pendingNames);
+            pendingNames.clear();
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        // Read the current state of the names off the main thread
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            final ArrayList<File> changed = new ArrayList<>();
+            final ArrayList<File> removed = new ArrayList<>();
+            for (String name : names) {
+                final File file = new File(dir, name);
+                if (file.exists()) {
+                    changed.add(FileEntry.read(dir, name));
+                } else {
+                    removed.add(file);
+                }
+            }
+            handler.post(() -> {
+                if (watching) {
+                    listener.onDirectoryChanged(changed, removed);
+                }
+            });
+        });
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread.
+         *
+         * @param changed entries which were added or modified, with their current attributes
+         * @param removed entries which no longer exist
+         */
+        void onDirectoryChanged(@NonNull List<File> changed, @NonNull List<File> removed);
+    }
+}
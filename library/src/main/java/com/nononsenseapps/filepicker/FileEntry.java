@@ -0,0 +1,95 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * A {@link File} whose attributes were captured once, when its directory was listed.
+ * <p/>
+ * Sorting, filtering and binding call {@link #isDirectory()}, {@link #getName()} and friends
+ * many times per item. A plain {@link File} goes to the filesystem on every such call, which is
+ * slow on FUSE-backed storage. The values returned here never change after construction, so
+ * they may be stale if the file is modified after the listing was made. The entry also keeps
+ * the type class computed by the picker, so views do not have to look at the name again.
+ */
+public class FileEntry extends File {
+
+    private final String name;
+    private final boolean directory;
+    private final boolean hidden;
+    private final long length;
+    private final long lastModified;
+    // See FilePickerFragment.getTypeClass(), negative until classified
+    private int typeClass = -1;
+
+    public FileEntry(@NonNull File parent, @NonNull String name, boolean directory,
+                     boolean hidden, long length, long lastModified) {
+        super(parent, name);
+        this.name = name;
+        this.directory = directory;
+        this.hidden = hidden;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Reads the attributes of a directory entry from the filesystem.
+     *
+     * @param parent directory being listed
+     * @param name   of the entry inside parent
+     * @return an entry holding the current attributes of the file
+     */
+    @NonNull
+    public static FileEntry read(@NonNull File parent, @NonNull String name) {
+        final File file = new File(parent, name);
+        final boolean directory = file.isDirectory();
+        return new FileEntry(parent, name, directory, DirectoryLister.isHiddenName(name),
+                directory ? 0L : file.length(), file.lastModified());
+    }
+
+    int getTypeClass() {
+        return typeClass;
+    }
+
+    void setTypeClass(int typeClass) {
+        this.typeClass = typeClass;
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    @Override
+    public boolean isFile() {
+        return !directory;
+    }
+
+    @Override
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+}
@@ -7,14 +7,21 @@
 package com.nononsenseapps.filepicker;
 
 import android.annotation.SuppressLint;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * A simple adapter which also inserts a header item ".." to handle going up to the parent folder.
@@ -22,11 +29,31 @@ import java.util.List;
  */
 public class FileItemAdapter<T> extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
+    // Id of the ".." header, which has no path
+    public static final long HEADER_ID = Long.MIN_VALUE;
+    // Payload of changes which only affect whether items are selected
+    public static final Object PAYLOAD_SELECTION = new Object();
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     protected final LogicHandler<T> mLogic;
+    // Follows every change of the list, so that selections stay with their items
+    protected final SelectionModel mSelection;
     protected List<T> mList = new ArrayList<>();
+    // Set while mList may be read by a diff on another thread, it is copied before changes
+    private boolean mListInDiff = false;
+    private Executor mDiffExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
+    private Handler mMainHandler = null;
+    // Incremented for every new list, so that outdated diffs are not applied
+    private int mDiffGeneration = 0;
+    // The list submitted last, until its diff has been applied
+    private List<T> mPendingList = null;
+    private DiffUtil.ItemCallback<T> mPendingCallback = null;
 
     public FileItemAdapter(@NonNull LogicHandler<T> logic) {
         this.mLogic = logic;
+        this.mSelection = logic.getSelection();
+        setHasStableIds(true);
     }
 
     @Override
@@ -45,6 +72,60 @@ public class FileItemAdapter<T> extends RecyclerView.Adapter<RecyclerView.ViewHo
         }
     }
 
+    /**
+     * Rows whose only change is {@link #PAYLOAD_SELECTION} get just their selection bound, see
+     * {@link LogicHandler#onBindSelection}.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int headerPosition,
+                                 List<Object> payloads) {
+        if (headerPosition == 0 || !isSelectionOnly(payloads)) {
+            onBindViewHolder(viewHolder, headerPosition);
+            return;
+        }
+        final T item = getItem(headerPosition);
+        // A row which is not loaded yet has no selection
+        if (item != null) {
+            mLogic.onBindSelection((AbstractFilePickerFragment<T>.DirViewHolder) viewHolder,
+                    headerPosition - 1, item);
+        }
+    }
+
+    private static boolean isSelectionOnly(@NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < payloads.size(); i++) {
+            if (payloads.get(i) != PAYLOAD_SELECTION) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bind the selection of every row again, without binding anything else.
+     */
+    public void notifySelectionChanged() {
+        final int count = getItemCount() - 1;
+        if (count > 0) {
+            // Add one for the header
+            notifyItemRangeChanged(1, count, PAYLOAD_SELECTION);
+        }
+    }
+
+    /**
+     * Bind the selection of a row again, without binding anything else.
+     *
+     * @param position of the item in the adapter, counting the header
+     */
+    public void notifySelectionChanged(int position) {
+        if (position > 0) {
+            notifyItemChanged(position, PAYLOAD_SELECTION);
+        }
+    }
+
     @Override
     public int getItemViewType(int headerPosition) {
         if (0 == headerPosition) {
@@ -78,10 +159,308 @@ public class FileItemAdapter<T> extends RecyclerView.Adapter<RecyclerView.ViewHo
         return mList.get(position - 1);
     }
 
+    /**
+     * Get an item without loading anything.
+     *
+     * @param pos position in the list, not counting the header
+     * @return the item, or null if it is not in memory
+     */
+    @Nullable
+    protected T peekItem(int pos) {
+        return mList.get(pos);
+    }
+
+    /**
+     * @return the items which positions of the selection refer to, or null if they are not
+     * all in memory. Must not be modified.
+     */
+    @Nullable
+    public List<T> getShownItems() {
+        return mList;
+    }
+
+    /**
+     * @return the selected items which are in memory, in the order they are shown
+     */
+    @NonNull
+    public List<T> getSelectedItems() {
+        final ArrayList<T> items = new ArrayList<>(mSelection.getSelectedCount());
+        for (int pos = mSelection.nextSelected(0); pos >= 0;
+             pos = mSelection.nextSelected(pos + 1)) {
+            final T item = peekItem(pos);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
     @SuppressLint("NotifyDataSetChanged")
     public void replaceAll(List<T> data) {
-        mList.clear();
-        mList.addAll(data);
+        cancelPendingDiff();
+        // A diff may still be reading the old list, so it is replaced rather than changed
+        setList(new ArrayList<>(data));
+        mSelection.reset(mList.size());
         notifyDataSetChanged();
     }
+
+    /**
+     * Set where {@link #submitList(List, DiffUtil.ItemCallback)} computes its diffs. The
+     * default is the shared {@link AsyncTask} thread pool.
+     *
+     * @param diffExecutor to compute diffs on, or null to compute them on the main thread
+     */
+    public void setDiffExecutor(@Nullable Executor diffExecutor) {
+        mDiffExecutor = diffExecutor;
+    }
+
+    /**
+     * Replace the list, but only notify the items which were inserted, removed, moved or
+     * changed. The diff is computed on a background thread, and the adapter keeps showing the
+     * old list until it is applied. If another list is submitted meanwhile, only the latest
+     * one is applied.
+     *
+     * @param data         the new list
+     * @param itemCallback decides which items are the same and if their contents changed,
+     *                     called on the background thread
+     */
+    public void submitList(@NonNull List<T> data,
+                           @NonNull final DiffUtil.ItemCallback<T> itemCallback) {
+        final Executor executor = mDiffExecutor;
+        if (executor == null) {
+            replaceAllWithDiff(data, itemCallback);
+            return;
+        }
+        if (mMainHandler == null) {
+            mMainHandler = new Handler(Looper.getMainLooper());
+        }
+        final int generation = ++mDiffGeneration;
+        final List<T> oldList = mList;
+        mListInDiff = true;
+        final List<T> newList = new ArrayList<>(data);
+        mPendingList = newList;
+        mPendingCallback = itemCallback;
+        executor.execute(() -> {
+            final DiffUtil.DiffResult result = calculateDiff(oldList, newList, itemCallback);
+            mMainHandler.post(() -> {
+                if (generation == mDiffGeneration) {
+                    mPendingList = null;
+                    mPendingCallback = null;
+                    setList(newList);
+                    result.dispatchUpdatesTo(new HeaderOffsetCallback());
+                }
+            });
+        });
+    }
+
+    /**
+     * Replace the list, but only notify the items which were inserted, removed, moved or
+     * changed. Rows which are unchanged are not rebound. The diff is computed right away on
+     * the calling thread, see {@link #submitList(List, DiffUtil.ItemCallback)}.
+     *
+     * @param data         the new list
+     * @param itemCallback decides which items are the same and if their contents changed
+     */
+    public void replaceAllWithDiff(@NonNull List<T> data,
+                                   @NonNull final DiffUtil.ItemCallback<T> itemCallback) {
+        cancelPendingDiff();
+        final List<T> newList = new ArrayList<>(data);
+        final DiffUtil.DiffResult result = calculateDiff(mList, newList, itemCallback);
+        setList(newList);
+        result.dispatchUpdatesTo(new HeaderOffsetCallback());
+    }
+
+    @NonNull
+    private static <T> DiffUtil.DiffResult calculateDiff(
+            @NonNull final List<T> oldList, @NonNull final List<T> newList,
+            @NonNull final DiffUtil.ItemCallback<T> itemCallback) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPos, int newPos) {
+                return itemCallback.areItemsTheSame(oldList.get(oldPos), newList.get(newPos));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPos, int newPos) {
+                return itemCallback.areContentsTheSame(oldList.get(oldPos), newList.get(newPos));
+            }
+        });
+    }
+
+    /**
+     * The list must not be shared with a diff, see {@link #getWritableList()}.
+     */
+    private void setList(@NonNull List<T> list) {
+        mList = list;
+        mListInDiff = false;
+    }
+
+    /**
+     * @return the list, copied first if a diff on another thread may still be reading it
+     */
+    @NonNull
+    private List<T> getWritableList() {
+        if (mListInDiff) {
+            setList(new ArrayList<>(mList));
+        }
+        return mList;
+    }
+
+    /**
+     * Drop a diff which is still being computed, the list is about to be replaced anyway.
+     */
+    private void cancelPendingDiff() {
+        mDiffGeneration++;
+        mPendingList = null;
+        mPendingCallback = null;
+    }
+
+    /**
+     * Apply a diff which is still being computed right away, so that the list can be
+     * modified further.
+     */
+    private void flushPendingDiff() {
+        if (mPendingList != null) {
+            replaceAllWithDiff(mPendingList, mPendingCallback);
+        }
+    }
+
+    /**
+     * Stable ids are derived from the full path of every item, so rows keep their identity
+     * across refreshes even when the items are new objects.
+     */
+    @Override
+    public long getItemId(int position) {
+        if (position == 0) {
+            return HEADER_ID;
+        }
+        return getPathId(mLogic.getFullPath(mList.get(position - 1)));
+    }
+
+    /**
+     * @param path full path of an item
+     * @return the 64-bit FNV-1a hash of the path, computed over its UTF-16 code units
+     */
+    public static long getPathId(@NonNull String path) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @param position in the list, not counting the header
+     * @param item     to insert
+     */
+    public void insertItem(int position, @NonNull T item) {
+        flushPendingDiff();
+        getWritableList().add(position, item);
+        mSelection.insert(position, 1);
+        notifyItemInserted(position + 1);
+    }
+
+    /**
+     * @param position in the list, not counting the header
+     */
+    public void removeItem(int position) {
+        flushPendingDiff();
+        getWritableList().remove(position);
+        mSelection.remove(position, 1);
+        notifyItemRemoved(position + 1);
+    }
+
+    /**
+     * Merge items into the list. Both the list and the items must be sorted with the given
+     * comparator. Only the inserted ranges are notified, so existing rows are not rebound.
+     *
+     * @param sortedItems to add
+     * @param comparator  which both lists are sorted by
+     */
+    public void addAllSorted(@NonNull List<T> sortedItems,
+                             @NonNull Comparator<? super T> comparator) {
+        if (sortedItems.isEmpty()) {
+            return;
+        }
+        flushPendingDiff();
+        final List<T> old = mList;
+        final ArrayList<T> merged = new ArrayList<>(old.size() + sortedItems.size());
+        // Inserted ranges as (start, count) pairs, in ascending order of their final position
+        final int[] ranges = new int[2 * sortedItems.size()];
+        int rangeCount = 0;
+        int i = 0;
+        int j = 0;
+        while (j < sortedItems.size()) {
+            if (i < old.size() && comparator.compare(old.get(i), sortedItems.get(j)) <= 0) {
+                merged.add(old.get(i++));
+            } else {
+                final int pos = merged.size();
+                final int last = 2 * (rangeCount - 1);
+                if (rangeCount > 0 && ranges[last] + ranges[last + 1] == pos) {
+                    // Extends the previous range
+                    ranges[last + 1]++;
+                } else {
+                    ranges[2 * rangeCount] = pos;
+                    ranges[2 * rangeCount + 1] = 1;
+                    rangeCount++;
+                }
+                merged.add(sortedItems.get(j++));
+            }
+        }
+        while (i < old.size()) {
+            merged.add(old.get(i++));
+        }
+
+        setList(merged);
+        for (int r = 0; r < rangeCount; r++) {
+            mSelection.insert(ranges[2 * r], ranges[2 * r + 1]);
+            // Add one for the header
+            notifyItemRangeInserted(ranges[2 * r] + 1, ranges[2 * r + 1]);
+        }
+    }
+
+    /**
+     * Forwards list updates to the adapter, shifted one step to make room for the header, and
+     * moves the selection along.
+     */
+    private class HeaderOffsetCallback implements ListUpdateCallback {
+        @Override
+        public void onInserted(int position, int count) {
+            mSelection.insert(position, count);
+            notifyItemRangeInserted(position + 1, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mSelection.remove(position, count);
+            notifyItemRangeRemoved(position + 1, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mSelection.move(fromPosition, toPosition);
+            notifyItemMoved(fromPosition + 1, toPosition + 1);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            // Changed items may no longer be selectable
+            mSelection.invalidate();
+            notifyItemRangeChanged(position + 1, count, payload);
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Operations on '/' separated paths, which do not ask the filesystem. Every operation makes
+ * a single pass over its input, and allocates nothing but the result. A path which is already
+ * normal is returned as it is.
+ * <p/>
+ * A normal path has no repeated slashes and does not end with a slash, unless it is the
+ * root "/". Dots are kept, so "A/../B" stays as it is.
+ */
+public final class FilePaths {
+
+    public static final char SEPARATOR = '/';
+
+    private FilePaths() {
+    }
+
+    /**
+     * Append the second path to the first and normalise the result, like
+     * {@link Utils#appendPath(String, String)}. Two absolute paths, e.g. /A/B/ and /C/D/,
+     * give /A/B/C/D.
+     */
+    @NonNull
+    public static String join(@NonNull CharSequence first, @NonNull CharSequence second) {
+        final char[] result = new char[first.length() + 1 + second.length()];
+        int length = collapse(first, result, 0);
+        if (length == 0 || result[length - 1] != SEPARATOR) {
+            result[length++] = SEPARATOR;
+        }
+        length = collapse(second, result, length);
+        return new String(result, 0, trimmedLength(result, length));
+    }
+
+    /**
+     * @return the path without repeated slashes and without a trailing slash, unless it is
+     * the root
+     */
+    @NonNull
+    public static String normalize(@NonNull CharSequence path) {
+        if (isNormal(path)) {
+            return path.toString();
+        }
+        final char[] result = new char[path.length()];
+        final int length = collapse(path, result, 0);
+        return new String(result, 0, trimmedLength(result, length));
+    }
+
+    /**
+     * @return true if {@link #normalize(CharSequence)} would not change the path
+     */
+    public static boolean isNormal(@NonNull CharSequence path) {
+        final int length = path.length();
+        boolean lastWasSeparator = false;
+        for (int i = 0; i < length; i++) {
+            final boolean separator = path.charAt(i) == SEPARATOR;
+            if (separator && lastWasSeparator) {
+                return false;
+            }
+            lastWasSeparator = separator;
+        }
+        return !(lastWasSeparator && length > 1);
+    }
+
+    /**
+     * @param path a normal path
+     * @return the part after the last slash, or the path itself if it has none
+     */
+    @NonNull
+    public static String name(@NonNull CharSequence path) {
+        final int separator = lastSeparator(path);
+        return path.subSequence(separator + 1, path.length()).toString();
+    }
+
+    /**
+     * @param path a normal path
+     * @return the path up to the last slash, which is kept for a file in the root, or null if
+     * there is no slash or the path is the root
+     */
+    @Nullable
+    public static String parent(@NonNull CharSequence path) {
+        final int length = path.length();
+        final int separator = lastSeparator(path);
+        if (separator < 0 || path.charAt(length - 1) == SEPARATOR) {
+            return null;
+        }
+        if (separator == 0) {
+            return String.valueOf(SEPARATOR);
+        }
+        return path.subSequence(0, separator).toString();
+    }
+
+    private static int lastSeparator(@NonNull CharSequence path) {
+        for (int i = path.length() - 1; i >= 0; i--) {
+            if (path.charAt(i) == SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy the path after the first length chars of the result, skipping slashes which follow
+     * another slash.
+     *
+     * @return the new length of the result
+     */
+    private static int collapse(@NonNull CharSequence path, @NonNull char[] result, int length) {
+        final int pathLength = path.length();
+        for (int i = 0; i < pathLength; i++) {
+            final char c = path.charAt(i);
+            if (c != SEPARATOR || length == 0 || result[length - 1] != SEPARATOR) {
+                result[length++] = c;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the length without a trailing slash, unless the result is the root
+     */
+    private static int trimmedLength(@NonNull char[] result, int length) {
+        return length > 1 && result[length - 1] == SEPARATOR ? length - 1 : length;
+    }
+}
@@ -10,18 +10,17 @@ import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.net.Uri;
-import android.os.FileObserver;
+import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
-import androidx.core.content.FileProvider;
+import androidx.core.os.CancellationSignal;
 import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -31,19 +30,37 @@ import java.util.List;
 public class FilePickerFragment extends AbstractFilePickerFragment<File> {
 
     protected static final int PERMISSIONS_REQUEST_WRITE_EXTERNAL_STORAGE = 1;
+    private static final String TAG = "FilePickerFragment";
+    // Coarsest modification time resolution of common filesystems (FAT)
+    private static final long MTIME_RESOLUTION_MS = 2000L;
+    // From this many entries on, listings are kept in a CompactFileList
+    public static final int DEFAULT_COMPACT_THRESHOLD = 20000;
     protected boolean showHiddenItems = false;
+    protected DirectoryLister directoryLister = DirectoryLister.platformDefault();
+    protected boolean measureListings = false;
+    protected long watchDebounceMs = DirectoryWatcher.DEFAULT_DEBOUNCE_MS;
+    protected boolean liveUpdates = true;
+    protected int compactThreshold = DEFAULT_COMPACT_THRESHOLD;
     private File mRequestedPath = null;
+    private DirectoryWatcher mWatcher = null;
+    private boolean mStopped = false;
+    // Remembers the provider's Uri paths per directory, see toUri()
+    private FileProviderUris mUris = null;
 
     public FilePickerFragment() {
     }
 
     /**
-     * This method is used to dictate whether hidden files and folders should be shown or not
+     * This method is used to dictate whether hidden files and folders should be shown or not.
+     * A directory which is already shown is filtered again in memory, see {@link #refilter()}.
      *
      * @param showHiddenItems whether hidden items should be shown or not
      */
     public void showHiddenItems(boolean showHiddenItems){
-        this.showHiddenItems = showHiddenItems;
+        if (this.showHiddenItems != showHiddenItems) {
+            this.showHiddenItems = showHiddenItems;
+            refilter();
+        }
     }
 
     /**
@@ -56,6 +73,138 @@ public class FilePickerFragment extends AbstractFilePickerFragment<File> {
         return showHiddenItems;
     }
 
+    /**
+     * Set from how many entries on a directory is kept in a {@link CompactFileList}, which
+     * needs far less memory but creates the entries whenever they are read.
+     *
+     * @param compactThreshold number of entries, or {@link Integer#MAX_VALUE} to never
+     *                         compact listings
+     */
+    public void setCompactThreshold(int compactThreshold) {
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Select the engine used to list directories. The default is the fastest one available
+     * on the device.
+     *
+     * @param directoryLister engine to use for the next listing
+     */
+    public void setDirectoryLister(@NonNull DirectoryLister directoryLister) {
+        this.directoryLister = directoryLister;
+    }
+
+    /**
+     * When enabled, the number of syscalls and the wall time of every listing is written to
+     * the log.
+     *
+     * @param measureListings whether listings should be measured or not
+     */
+    public void setMeasureListings(boolean measureListings) {
+        this.measureListings = measureListings;
+    }
+
+    /**
+     * When enabled, the current directory is watched for as long as it is shown, and files
+     * which are added or removed meanwhile appear or disappear without losing the selection.
+     * Otherwise changes are only picked up while the directory is being listed.
+     *
+     * @param liveUpdates whether the current directory should be watched
+     */
+    public void setLiveUpdates(boolean liveUpdates) {
+        this.liveUpdates = liveUpdates;
+        updateWatcher();
+    }
+
+    /**
+     * Changes to the current directory are collected for this long before they are shown, so
+     * that a burst of new files results in a single update.
+     *
+     * @param debounceMs how long to collect changes, in milliseconds
+     */
+    public void setWatchDebounce(long debounceMs) {
+        this.watchDebounceMs = debounceMs;
+    }
+
+    /**
+     * Watch the current directory if necessary, and stop watching any other directory.
+     */
+    private void updateWatcher() {
+        if (mCurrentPath == null || mStopped || !(liveUpdates || isLoading)) {
+            stopWatching();
+            return;
+        }
+        // The current path may be an entry from an earlier listing
+        final File dir = new File(mCurrentPath.getPath());
+        if (mWatcher != null && mWatcher.getDirectory().equals(dir)) {
+            return;
+        }
+        stopWatching();
+        mWatcher = new DirectoryWatcher(dir, watchDebounceMs,
+                (changed, removed) -> onDirectoryChanged(dir, changed, removed));
+        mWatcher.startWatching();
+    }
+
+    private void stopWatching() {
+        if (mWatcher != null) {
+            mWatcher.stopWatching();
+            mWatcher = null;
+        }
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        if (mStopped) {
+            mStopped = false;
+            if (liveUpdates && !isLoading && mCurrentPath != null) {
+                // Catch up with changes made while stopped, this keeps the selections
+                refresh(mCurrentPath);
+            } else {
+                updateWatcher();
+            }
+        }
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        mStopped = true;
+        stopWatching();
+    }
+
+    /**
+     * Directories are watched while they are listed, and afterwards if live updates are on.
+     *
+     * @param nextPath path to list files for
+     */
+    @Override
+    protected void refresh(@NonNull File nextPath) {
+        super.refresh(nextPath);
+        updateWatcher();
+    }
+
+    @Override
+    public void onLoadFinished(Loader<List<File>> loader, List<File> data) {
+        super.onLoadFinished(loader, data);
+        updateWatcher();
+    }
+
+    /**
+     * Called on the main thread when entries of a watched directory have changed.
+     *
+     * @param dir     which was watched
+     * @param changed entries which were added or modified
+     * @param removed entries which no longer exist
+     */
+    protected void onDirectoryChanged(@NonNull File dir, @NonNull List<File> changed,
+                                      @NonNull List<File> removed) {
+        if (mCurrentPath == null || !dir.getPath().equals(mCurrentPath.getPath())) {
+            return;
+        }
+        applyChanges(changed, removed);
+    }
+
     /**
      * @return true if app has been granted permission to write to the SD-card.
      */
@@ -200,10 +349,33 @@ public class FilePickerFragment extends AbstractFilePickerFragment<File> {
     @NonNull
     @Override
     public Uri toUri(@NonNull final File file) {
-        return FileProvider
-                .getUriForFile(getContext(),
-                        getContext().getApplicationContext().getPackageName() + ".provider",
-                        file);
+        return getUris().toUri(file);
+    }
+
+    /**
+     * Converts all files at once, so that the provider is only asked once per directory, and
+     * paths of large selections are resolved on all cores.
+     *
+     * @param files to convert, on a background thread when the selection is returned
+     * @return a Uri for every file
+     */
+    @NonNull
+    @Override
+    protected List<Uri> toUri(@NonNull Iterable<File> files) {
+        final ArrayList<File> list = new ArrayList<>();
+        for (File file : files) {
+            list.add(file);
+        }
+        return getUris().toUris(list);
+    }
+
+    @NonNull
+    private synchronized FileProviderUris getUris() {
+        if (mUris == null) {
+            mUris = new FileProviderUris(requireContext(),
+                    requireContext().getApplicationContext().getPackageName() + ".provider");
+        }
+        return mUris;
     }
 
     /**
@@ -252,86 +424,207 @@ public class FilePickerFragment extends AbstractFilePickerFragment<File> {
     }
 
     /**
-     * Compare two files to determine their relative sort order. This follows the usual
-     * comparison interface. Override to determine your own custom sort order.
+     * Hidden items are part of the listing only if they are shown, so that affects the key.
+     */
+    @NonNull
+    @Override
+    protected String getListingCacheKey(@NonNull File dir) {
+        return super.getListingCacheKey(dir) + '|' + showHiddenItems;
+    }
+
+    /**
+     * The modification time of a directory changes whenever an entry is added, removed or
+     * renamed, so a cached listing is valid as long as it is unchanged.
      * <p/>
-     * Default behaviour is to place directories before files, but sort them alphabetically
-     * otherwise.
+     * Some filesystems only store the time with a resolution of seconds, so directories
+     * modified very recently have no usable stamp.
+     *
+     * @param dir which is about to be listed
+     * @return the modification time of the directory
+     */
+    @Override
+    protected long getListingStamp(@NonNull File dir) {
+        // Ask the disk, dir may be an entry from an earlier listing
+        final long lastModified = new File(dir.getPath()).lastModified();
+        if (lastModified == 0L ||
+                System.currentTimeMillis() - lastModified < MTIME_RESOLUTION_MS) {
+            return ListingCache.NO_STAMP;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Files are also considered changed if their size or modification time differs.
+     */
+    @Override
+    protected boolean isSameContent(@NonNull File lhs, @NonNull File rhs) {
+        return super.isSameContent(lhs, rhs) && lhs.length() == rhs.length() &&
+                lhs.lastModified() == rhs.lastModified();
+    }
+
+    /**
+     * Classify a file for the views, for example to tell images apart from other files.
+     * Called at most once for every listed entry, on the loader thread. Override together
+     * with {@link #getItemViewType(int, File)}.
      *
-     * @param lhs File on the "left-hand side"
-     * @param rhs File on the "right-hand side"
-     * @return -1 if if lhs should be placed before rhs, 0 if they are equal,
-     * and 1 if rhs should be placed before lhs
-     */
-    protected int compareFiles(@NonNull File lhs, @NonNull File rhs) {
-        if (lhs.isDirectory() && !rhs.isDirectory()) {
-            return -1;
-        } else if (rhs.isDirectory() && !lhs.isDirectory()) {
-            return 1;
+     * @param file to classify
+     * @return a class defined by the subclass, must not be negative. 0 by default.
+     */
+    protected int classifyType(@NonNull File file) {
+        return 0;
+    }
+
+    /**
+     * @param file to get the class of
+     * @return the result of {@link #classifyType(File)}, which listed entries remember
+     */
+    public final int getTypeClass(@NonNull File file) {
+        if (!(file instanceof FileEntry)) {
+            return classifyType(file);
+        }
+        final FileEntry entry = (FileEntry) file;
+        int typeClass = entry.getTypeClass();
+        if (typeClass < 0) {
+            typeClass = classifyType(file);
+            entry.setTypeClass(typeClass);
+        }
+        return typeClass;
+    }
+
+    /**
+     * Also classifies the visible entries, so that binding them does no string work. Large
+     * directories are compacted, see {@link #setCompactThreshold(int)}.
+     */
+    @NonNull
+    @Override
+    protected List<File> prepareListing(@NonNull List<File> items) {
+        final List<File> files = super.prepareListing(items);
+        for (File file : files) {
+            getTypeClass(file);
+        }
+        if (items.size() >= compactThreshold) {
+            return CompactFileList.compact(items, files);
+        }
+        return files;
+    }
+
+    /**
+     * A compact listing has no instances to move around, so the changes are merged into its
+     * storage and the result is filtered and sorted again.
+     */
+    @Override
+    protected void applyChanges(@NonNull List<File> changed, @NonNull List<File> removed) {
+        if (!isLoading && mRawFiles instanceof CompactFileList) {
+            mRawFiles = ((CompactFileList) mRawFiles).withChanges(changed, removed);
+            refilter();
         } else {
-            return lhs.getName().compareToIgnoreCase(rhs.getName());
+            super.applyChanges(changed, removed);
         }
     }
 
+    /**
+     * Listed files are {@link FileEntry} objects, which answer this from memory.
+     */
+    @Override
+    protected long getSize(@NonNull File file) {
+        return file.isDirectory() ? 0L : file.length();
+    }
+
+    /**
+     * Listed files are {@link FileEntry} objects, which answer this from memory.
+     */
+    @Override
+    protected long getLastModified(@NonNull File file) {
+        return file.lastModified();
+    }
+
     private static class FileAsyncTaskLoader extends AsyncTaskLoader<List<File>> {
 
         private final FilePickerFragment filePickerFragment;
-        FileObserver fileObserver;
+        private final ChunkPublisher<File> chunkPublisher;
+        // Decided on the main thread, so navigation can not change it meanwhile
+        private final File dir;
+        // Cancelled by cancelLoadInBackground(), guarded by this. Kept after the load, so that a
+        // late cancel does not reach the next one.
+        private CancellationSignal cancellationSignal;
+        private boolean started = false;
 
         public FileAsyncTaskLoader(Context context, FilePickerFragment filePickerFragment) {
             super(context);
             this.filePickerFragment = filePickerFragment;
+            this.chunkPublisher = filePickerFragment.newChunkPublisher();
+
+            // handle if directory does not exist. Fall back to root.
+            // The current path may be an entry from an earlier listing, so check the disk
+            if (filePickerFragment.mCurrentPath == null ||
+                    !new File(filePickerFragment.mCurrentPath.getPath()).isDirectory()) {
+                filePickerFragment.mCurrentPath = filePickerFragment.getRoot();
+            }
+            this.dir = filePickerFragment.mCurrentPath;
         }
 
         @Override
         public List<File> loadInBackground() {
-            File[] files = filePickerFragment.mCurrentPath.listFiles(filePickerFragment::isItemVisible);
-            if (files != null) {
-                Arrays.sort(files, filePickerFragment::compareFiles);
-                return Arrays.asList(files);
-            } else {
+            final CancellationSignal signal;
+            synchronized (this) {
+                // A load on an executor may be cancelled before it created its signal, see
+                // cancelLoadInBackground()
+                if (isLoadInBackgroundCanceled() || (!started && cancellationSignal != null)) {
+                    return new ArrayList<>();
+                }
+                started = true;
+                signal = cancellationSignal = new CancellationSignal();
+            }
+            return listFiles(signal);
+        }
+
+        private List<File> listFiles(@NonNull CancellationSignal signal) {
+            final ListingStats stats =
+                    filePickerFragment.measureListings ? new ListingStats() : null;
+            if (stats != null) {
+                stats.start();
+            }
+
+            // Every attribute is read exactly once here, sorting and binding use the entries
+            final ArrayList<File> entries = new ArrayList<>();
+            filePickerFragment.directoryLister.list(dir, entry -> {
+                entries.add(entry);
+                chunkPublisher.add(entry);
+                // Stop reading the directory as soon as the result is no longer wanted
+                return !signal.isCanceled();
+            }, stats);
+            if (signal.isCanceled()) {
                 return new ArrayList<>();
             }
+            final List<File> files = filePickerFragment.prepareListing(entries);
+
+            if (stats != null) {
+                stats.stop();
+                Log.d(TAG, "Listed " + dir.getPath() + " with " + stats);
+            }
+            return files;
         }
 
         /**
-         * Handles a request to start the Loader.
+         * Called on the main thread when the user navigates elsewhere during a load.
          */
         @Override
-        protected void onStartLoading() {
-            // handle if directory does not exist. Fall back to root.
-            if (filePickerFragment.mCurrentPath == null || !filePickerFragment.isDir(filePickerFragment.mCurrentPath)) {
-                filePickerFragment.mCurrentPath = filePickerFragment.getRoot();
-            }
-
-            // Start watching for changes
-            fileObserver = new FileObserver(filePickerFragment.mCurrentPath.getPath(),
-                    FileObserver.CREATE |
-                            FileObserver.DELETE
-                            | FileObserver.MOVED_FROM | FileObserver.MOVED_TO
-            ) {
-
-                @Override
-                public void onEvent(int event, String path) {
-                    // Reload
-                    onContentChanged();
+        public void cancelLoadInBackground() {
+            super.cancelLoadInBackground();
+            synchronized (this) {
+                if (cancellationSignal == null) {
+                    cancellationSignal = new CancellationSignal();
                 }
-            };
-            fileObserver.startWatching();
-
-            forceLoad();
+                cancellationSignal.cancel();
+            }
         }
 
         /**
-         * Handles a request to completely reset the Loader.
+         * Handles a request to start the Loader.
          */
         @Override
-        protected void onReset() {
-            // Stop watching
-            if (fileObserver != null) {
-                fileObserver.stopWatching();
-                fileObserver = null;
-            }
+        protected void onStartLoading() {
+            forceLoad();
         }
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages over a listing which is already in memory, such as a {@link CompactFileList} which
+ * creates its entries when they are read. Only the pages which are loaded hold entries.
+ */
+public final class ListPagedSource<T> implements PagedSource<T> {
+
+    private final List<T> list;
+
+    /**
+     * @param list sorted and filtered items, must not be modified
+     */
+    public ListPagedSource(@NonNull List<T> list) {
+        this.list = list;
+    }
+
+    /**
+     * @return the items paged over, must not be modified
+     */
+    @NonNull
+    public List<T> getList() {
+        return list;
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+
+    @Override
+    public boolean hasMore() {
+        return false;
+    }
+
+    @NonNull
+    @Override
+    public List<T> loadPage(int offset, int count) {
+        final int end = Math.min(list.size(), offset + count);
+        if (offset >= end) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(list.subList(offset, end));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Remembers recent directory listings so that going back to a directory does not require
+ * listing it again. The least recently used listings are evicted once either the number of
+ * listings or their estimated size in bytes exceeds the configured limits.
+ * <p/>
+ * Every listing is stored with a stamp, for example the modification time of the directory.
+ * A listing is only returned by {@link #get(String, long)} if the stamp is unchanged.
+ * <p/>
+ * {@link #getInstance()} returns a cache shared by all pickers in the process. All methods
+ * are thread safe.
+ */
+public class ListingCache {
+
+    // Stamp for listings which can not be validated, they are never returned by get()
+    public static final long NO_STAMP = Long.MIN_VALUE;
+    public static final int DEFAULT_MAX_LISTINGS = 32;
+    public static final long DEFAULT_MAX_BYTES = 4L * 1024L * 1024L;
+
+    private static final ListingCache sInstance =
+            new ListingCache(DEFAULT_MAX_LISTINGS, DEFAULT_MAX_BYTES);
+
+    private final LinkedHashMap<String, Listing> mListings =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private int mMaxListings;
+    private long mMaxBytes;
+    private long mBytes = 0L;
+
+    public ListingCache(int maxListings, long maxBytes) {
+        mMaxListings = maxListings;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache shared by all pickers in this process
+     */
+    @NonNull
+    public static ListingCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Change the limits, evicting listings right away if necessary.
+     *
+     * @param maxListings largest number of listings to keep
+     * @param maxBytes    largest total estimated size of the listings to keep
+     */
+    public synchronized void setLimits(int maxListings, long maxBytes) {
+        mMaxListings = maxListings;
+        mMaxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * @param key   of the listing
+     * @param stamp the current stamp of the directory
+     * @return the listing if it is cached and was stored with the same stamp, null otherwise.
+     * The list must not be modified.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public synchronized <T> List<T> get(@NonNull String key, long stamp) {
+        if (stamp == NO_STAMP) {
+            return null;
+        }
+        final Listing listing = mListings.get(key);
+        if (listing == null || listing.stamp != stamp) {
+            return null;
+        }
+        return (List<T>) listing.items;
+    }
+
+    /**
+     * Get a listing without checking its stamp, for showing while a fresh listing loads.
+     *
+     * @param key of the listing
+     * @return the listing if it is cached, even if it may be outdated, null otherwise.
+     * The list must not be modified.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public synchronized <T> List<T> getStale(@NonNull String key) {
+        final Listing listing = mListings.get(key);
+        return listing == null ? null : (List<T>) listing.items;
+    }
+
+    /**
+     * Store a listing, replacing any previous listing with the same key.
+     *
+     * @param key   of the listing
+     * @param stamp of the directory when it was listed
+     * @param items in the directory, copied so that later changes to the list do not reach
+     *              the cache. A listing prepared by the picker can not be modified, and is kept
+     *              as it is so that it still remembers what it was filtered from.
+     * @param bytes estimated memory used by the items
+     */
+    public synchronized <T> void put(@NonNull String key, long stamp, @NonNull List<T> items,
+                                     long bytes) {
+        remove(key);
+        if (bytes > mMaxBytes) {
+            // Would only evict everything else
+            return;
+        }
+        final List<T> kept = items instanceof AbstractFilePickerFragment.Listing ? items :
+                Collections.unmodifiableList(new ArrayList<>(items));
+        mListings.put(key, new Listing(stamp, kept, bytes));
+        mBytes += bytes;
+        trim();
+    }
+
+    /**
+     * @param key of the listing to forget
+     */
+    public synchronized void remove(@NonNull String key) {
+        final Listing old = mListings.remove(key);
+        if (old != null) {
+            mBytes -= old.bytes;
+        }
+    }
+
+    /**
+     * Forget all listings.
+     */
+    public synchronized void clear() {
+        mListings.clear();
+        mBytes = 0L;
+    }
+
+    /**
+     * @return number of listings currently cached
+     */
+    public synchronized int size() {
+        return mListings.size();
+    }
+
+    /**
+     * @return total estimated size of the cached listings
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    private void trim() {
+        final Iterator<Listing> it = mListings.values().iterator();
+        while (it.hasNext() && (mListings.size() > mMaxListings || mBytes > mMaxBytes)) {
+            // Iteration order is least recently used first
+            mBytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    private static class Listing {
+        final long stamp;
+        final List<?> items;
+        final long bytes;
+
+        Listing(long stamp, @NonNull List<?> items, long bytes) {
+            this.stamp = stamp;
+            this.items = items;
+            this.bytes = bytes;
+        }
+    }
+}
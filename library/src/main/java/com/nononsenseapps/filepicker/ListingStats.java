@@ -0,0 +1,60 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Counts the filesystem calls and the time spent on a single directory listing. Only
+ * collected when measuring has been enabled, see
+ * {@link FilePickerFragment#setMeasureListings(boolean)}.
+ */
+public class ListingStats {
+
+    // Name of the engine which did the listing
+    public String engine = "";
+    // Number of entries seen, before any filtering
+    public int entries = 0;
+    // Calls which open and read the directory itself
+    public int directoryReads = 0;
+    // Calls which stat a single entry
+    public int attributeReads = 0;
+    private long startNanos = 0L;
+    private long elapsedNanos = 0L;
+
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return time between {@link #start()} and {@link #stop()} in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000L;
+    }
+
+    /**
+     * @return syscalls issued, one for each directory read and attribute read
+     */
+    public int getSyscalls() {
+        return directoryReads + attributeReads;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: %d entries, %d syscalls (%d dir, %d stat), %d ms",
+                engine, entries, getSyscalls(), directoryReads, attributeReads,
+                getElapsedMillis());
+    }
+}
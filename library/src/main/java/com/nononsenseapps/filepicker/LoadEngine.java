@@ -0,0 +1,206 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs directory listings on an {@link Executor} supplied by the host, as an alternative to
+ * {@link androidx.loader.app.LoaderManager}. Any number of loads may run at the same time, and
+ * every load can be cancelled or given a timeout.
+ * <p/>
+ * Results are delivered through a {@link Callback}, on the main thread unless another
+ * delivery executor is given. Loads which were cancelled never deliver anything, and a load
+ * which timed out is cancelled and reported as failed with a {@link TimeoutException}.
+ *
+ * @param <T> the type which is used, for example a normal java File object.
+ */
+public class LoadEngine<T> {
+
+    // Shared by all engines, only used to cancel loads which take too long
+    private static ScheduledExecutorService sTimer = null;
+
+    private final Executor executor;
+    private final Executor delivery;
+
+    /**
+     * @param executor runs the loads
+     */
+    public LoadEngine(@NonNull Executor executor) {
+        this(executor, new Handler(Looper.getMainLooper())::post);
+    }
+
+    /**
+     * @param executor runs the loads
+     * @param delivery runs the callbacks
+     */
+    public LoadEngine(@NonNull Executor executor, @NonNull Executor delivery) {
+        this.executor = executor;
+        this.delivery = delivery;
+    }
+
+    @NonNull
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (sTimer == null) {
+            final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+                final Thread thread = new Thread(r, "LoadEngine timeouts");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.setRemoveOnCancelPolicy(true);
+            sTimer = timer;
+        }
+        return sTimer;
+    }
+
+    /**
+     * Start a load.
+     *
+     * @param generation passed back to the callback, to tell loads apart
+     * @param task       which lists the directory
+     * @param timeoutMs  how long the load may take before it is cancelled, or 0 for no limit
+     * @param callback   receives the result
+     * @return a handle which can cancel the load
+     */
+    @NonNull
+    public Request submit(int generation, @NonNull Task<T> task, long timeoutMs,
+                          @NonNull Callback<T> callback) {
+        final Request request = new Request(generation, task, callback);
+        if (timeoutMs > 0) {
+            request.timeout = getTimer().schedule(request::onTimeout, timeoutMs,
+                    TimeUnit.MILLISECONDS);
+        }
+        executor.execute(request::run);
+        return request;
+    }
+
+    public interface Task<T> {
+        /**
+         * Called on a thread of the executor.
+         *
+         * @param signal cancelled when the result is no longer wanted, the task should stop
+         *               as soon as possible
+         * @return the sorted items in the directory
+         * @throws Exception if the directory could not be listed
+         */
+        @NonNull
+        List<T> load(@NonNull CancellationSignal signal) throws Exception;
+    }
+
+    public interface Callback<T> {
+        /**
+         * @param generation of the load
+         * @param data       returned by the task
+         */
+        void onLoadFinished(int generation, @NonNull List<T> data);
+
+        /**
+         * @param generation of the load
+         * @param error      thrown by the task, or a {@link TimeoutException}
+         */
+        void onLoadFailed(int generation, @NonNull Exception error);
+    }
+
+    /**
+     * A single load, which delivers at most one result.
+     */
+    public class Request {
+        private final int generation;
+        private final Task<T> task;
+        private final Callback<T> callback;
+        private final CancellationSignal signal = new CancellationSignal();
+        // Set once a result, an error or a timeout has been decided on
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile boolean canceled = false;
+        private volatile ScheduledFuture<?> timeout = null;
+
+        Request(int generation, @NonNull Task<T> task, @NonNull Callback<T> callback) {
+            this.generation = generation;
+            this.task = task;
+            this.callback = callback;
+        }
+
+        public int getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Cancel the load. Nothing is delivered afterwards, even if the task completes.
+         */
+        public void cancel() {
+            canceled = true;
+            done.set(true);
+            stopTimeout();
+            signal.cancel();
+        }
+
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        private void run() {
+            if (signal.isCanceled()) {
+                return;
+            }
+            try {
+                finish(task.load(signal), null);
+            } catch (OperationCanceledException e) {
+                // Cancelled or timed out, which has already been handled
+            } catch (Exception e) {
+                finish(null, e);
+            }
+        }
+
+        private void onTimeout() {
+            if (done.compareAndSet(false, true)) {
+                signal.cancel();
+                deliver(null, new TimeoutException("Load did not finish in time"));
+            }
+        }
+
+        private void finish(List<T> data, Exception error) {
+            if (done.compareAndSet(false, true)) {
+                stopTimeout();
+                deliver(data, error);
+            }
+        }
+
+        private void deliver(final List<T> data, final Exception error) {
+            delivery.execute(() -> {
+                if (canceled) {
+                    return;
+                }
+                if (error == null) {
+                    callback.onLoadFinished(generation, data);
+                } else {
+                    callback.onLoadFailed(generation, error);
+                }
+            });
+        }
+
+        private void stopTimeout() {
+            final ScheduledFuture<?> future = timeout;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
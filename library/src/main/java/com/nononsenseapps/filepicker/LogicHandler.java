@@ -109,6 +109,35 @@ public interface LogicHandler<T> {
     void onBindViewHolder(@NonNull AbstractFilePickerFragment<T>.DirViewHolder viewHolder,
                           int position, @NonNull T data);
 
+    /**
+     * Bind only the selection state, the rest of the view holder already shows the item.
+     * Called by the adapter when nothing but the selection of the row changed. Handlers which
+     * do not show a selection may leave the default, which binds the whole row again.
+     *
+     * @param viewHolder which was bound to the item before
+     * @param position   0 - n, where the header has been subtracted
+     * @param data       the item which the view holder shows
+     */
+    default void onBindSelection(@NonNull AbstractFilePickerFragment<T>.DirViewHolder viewHolder,
+                                 int position, @NonNull T data) {
+        onBindViewHolder(viewHolder, position, data);
+    }
+
+    /**
+     * The selection is kept by position. The adapter asks for it once, when it is created, and
+     * moves its bits whenever items are inserted, removed or moved, so the selection follows
+     * its items. The handler should read it when binding rows and change it only through the
+     * adapter, or notify the adapter of the rows it changed.
+     * <p/>
+     * The default gives a new, empty selection, for handlers which do not select items.
+     *
+     * @return which positions are selected, kept in step with the list by the adapter
+     */
+    @NonNull
+    default SelectionModel getSelection() {
+        return new SelectionModel();
+    }
+
     /**
      * @param position 0 - n, where the header has been subtracted
      * @param data
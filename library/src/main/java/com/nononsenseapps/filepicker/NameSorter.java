@@ -0,0 +1,303 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Orders items with directories first, and by name otherwise.
+ * <p/>
+ * By default names are compared ignoring case, like
+ * {@link String#compareToIgnoreCase(String)}. A {@link Collator} can be given for locale
+ * aware ordering, and natural ordering places "file2" before "file10" by comparing runs of
+ * digits by their numeric value, however long they are. Names which are equal in this
+ * ordering are ordered by {@link String#compareTo(String)}, so that the order is total.
+ * <p/>
+ * {@link #sort(List, LogicHandler)} computes one key per item up front and sorts on those,
+ * instead of case folding or collating the same names again for every comparison.
+ * <p/>
+ * Instances are immutable and may be used from any thread, provided the collator is not
+ * modified afterwards.
+ */
+public class NameSorter {
+
+    private static final String[] NO_RUNS = new String[0];
+
+    private final Collator collator;
+    private final boolean natural;
+
+    /**
+     * Directories first, then names ignoring case.
+     */
+    public NameSorter() {
+        this(null, false);
+    }
+
+    /**
+     * @param collator for locale aware ordering, or null to compare names ignoring case
+     * @param natural  whether runs of digits should be compared by their numeric value
+     */
+    public NameSorter(@Nullable Collator collator, boolean natural) {
+        this.collator = collator;
+        this.natural = natural;
+    }
+
+    /**
+     * Compare two items. Gives the same order as sorting, but costs more per comparison.
+     *
+     * @return a negative number if the left item comes first, positive if the right item
+     * comes first, zero if both have the same name and type
+     */
+    public int compare(boolean lhsDir, @NonNull String lhsName, boolean rhsDir,
+                       @NonNull String rhsName) {
+        if (lhsDir != rhsDir) {
+            return lhsDir ? -1 : 1;
+        }
+        return newKey(collator, lhsDir, lhsName, 0)
+                .compareTo(newKey(collator, rhsDir, rhsName, 0));
+    }
+
+    /**
+     * Sort items in place.
+     *
+     * @param items to sort
+     * @param logic which tells directories and names of the items
+     */
+    public <T> void sort(@NonNull List<T> items, @NonNull LogicHandler<T> logic) {
+        final int size = items.size();
+        if (size < 2) {
+            return;
+        }
+        final Key[] keys = new Key[size];
+        for (int i = 0; i < size; i++) {
+            final T item = items.get(i);
+            keys[i] = newKey(collator, logic.isDir(item), logic.getName(item), i);
+        }
+        Arrays.sort(keys);
+        reorder(items, keys);
+    }
+
+    /**
+     * Sort items in place, using all cores to compute the keys and to sort them. Gives the
+     * same order as {@link #sort(List, LogicHandler)}, but only pays off for large lists.
+     *
+     * @param items to sort
+     * @param logic which tells directories and names of the items, called from several
+     *              threads at once
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    public <T> void parallelSort(@NonNull List<T> items, @NonNull LogicHandler<T> logic) {
+        final Object[] unsorted = items.toArray();
+        final Key[] keys = new Key[unsorted.length];
+        // Collators keep state while comparing, so every thread gets its own copy
+        final ThreadLocal<Collator> collators = new ThreadLocal<Collator>() {
+            @Override
+            protected Collator initialValue() {
+                return collator == null ? null : (Collator) collator.clone();
+            }
+        };
+        Arrays.parallelSetAll(keys, i -> {
+            @SuppressWarnings("unchecked")
+            final T item = (T) unsorted[i];
+            return newKey(collators.get(), logic.isDir(item), logic.getName(item), i);
+        });
+        Arrays.parallelSort(keys);
+        reorder(items, keys);
+    }
+
+    private static <T> void reorder(@NonNull List<T> items, @NonNull Key[] keys) {
+        final Object[] unsorted = items.toArray();
+        for (int i = 0; i < keys.length; i++) {
+            @SuppressWarnings("unchecked")
+            final T item = (T) unsorted[keys[i].index];
+            items.set(i, item);
+        }
+    }
+
+    @NonNull
+    private Key newKey(@Nullable Collator collator, boolean dir, @NonNull String name,
+                       int index) {
+        if (collator == null) {
+            return new Key(dir, natural, fold(name), null, null, name, index);
+        }
+        if (!natural) {
+            return new Key(dir, false, null, new CollationKey[]{collator.getCollationKey(name)},
+                    NO_RUNS, name, index);
+        }
+        // The text around every run of digits is collated, the runs are compared as numbers
+        final ArrayList<CollationKey> texts = new ArrayList<>();
+        final ArrayList<String> runs = new ArrayList<>();
+        int start = 0;
+        int i = 0;
+        while (i < name.length()) {
+            if (!isDigit(name.charAt(i))) {
+                i++;
+                continue;
+            }
+            final int end = digitsEnd(name, i);
+            texts.add(collator.getCollationKey(name.substring(start, i)));
+            runs.add(name.substring(skipZeros(name, i, end), end));
+            start = i = end;
+        }
+        texts.add(collator.getCollationKey(name.substring(start)));
+        return new Key(dir, true, null, texts.toArray(new CollationKey[0]),
+                runs.toArray(new String[0]), name, index);
+    }
+
+    /**
+     * Case folds the same way as {@link String#compareToIgnoreCase(String)}, so that comparing
+     * folded names with {@link String#compareTo(String)} gives the same result.
+     */
+    @NonNull
+    static String fold(@NonNull String name) {
+        final char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Compare names character by character, except where both have a run of digits. Those are
+     * compared by their value, that is by their length without leading zeros and then digit by
+     * digit, so runs of any length need no padding.
+     */
+    private static int compareNatural(@NonNull String lhs, @NonNull String rhs) {
+        int i = 0;
+        int j = 0;
+        while (i < lhs.length() && j < rhs.length()) {
+            final char a = lhs.charAt(i);
+            final char b = rhs.charAt(j);
+            if (isDigit(a) && isDigit(b)) {
+                final int lhsEnd = digitsEnd(lhs, i);
+                final int rhsEnd = digitsEnd(rhs, j);
+                final int result = compareRuns(lhs, skipZeros(lhs, i, lhsEnd), lhsEnd,
+                        rhs, skipZeros(rhs, j, rhsEnd), rhsEnd);
+                if (result != 0) {
+                    return result;
+                }
+                i = lhsEnd;
+                j = rhsEnd;
+            } else if (a != b) {
+                return a - b;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return (lhs.length() - i) - (rhs.length() - j);
+    }
+
+    /**
+     * @return the order of two runs of digits without leading zeros
+     */
+    private static int compareRuns(@NonNull String lhs, int lhsStart, int lhsEnd,
+                                   @NonNull String rhs, int rhsStart, int rhsEnd) {
+        final int length = lhsEnd - lhsStart;
+        if (length != rhsEnd - rhsStart) {
+            return length - (rhsEnd - rhsStart);
+        }
+        for (int k = 0; k < length; k++) {
+            final int result = lhs.charAt(lhsStart + k) - rhs.charAt(rhsStart + k);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int digitsEnd(@NonNull String name, int start) {
+        int end = start;
+        while (end < name.length() && isDigit(name.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int skipZeros(@NonNull String name, int start, int end) {
+        while (start < end && name.charAt(start) == '0') {
+            start++;
+        }
+        return start;
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final boolean dir;
+        final boolean natural;
+        // Without a collator
+        final String folded;
+        // With a collator, the text before, between and after the digit runs
+        final CollationKey[] collationKeys;
+        final String[] runs;
+        final String name;
+        final int index;
+
+        Key(boolean dir, boolean natural, String folded, CollationKey[] collationKeys,
+            String[] runs, String name, int index) {
+            this.dir = dir;
+            this.natural = natural;
+            this.folded = folded;
+            this.collationKeys = collationKeys;
+            this.runs = runs;
+            this.name = name;
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(@NonNull Key other) {
+            if (dir != other.dir) {
+                return dir ? -1 : 1;
+            }
+            final int result;
+            if (collationKeys != null) {
+                result = compareCollated(other);
+            } else if (natural) {
+                result = compareNatural(folded, other.folded);
+            } else {
+                result = folded.compareTo(other.folded);
+            }
+            return result != 0 ? result : name.compareTo(other.name);
+        }
+
+        private int compareCollated(@NonNull Key other) {
+            final int parts = Math.min(collationKeys.length, other.collationKeys.length);
+            for (int i = 0; i < parts; i++) {
+                int result = collationKeys[i].compareTo(other.collationKeys[i]);
+                if (result != 0) {
+                    return result;
+                }
+                final boolean hasRun = i < runs.length;
+                if (hasRun != i < other.runs.length) {
+                    // The name which ends here comes first
+                    return hasRun ? 1 : -1;
+                }
+                if (hasRun) {
+                    result = compareRuns(runs[i], 0, runs[i].length(),
+                            other.runs[i], 0, other.runs[i].length());
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+            }
+            return collationKeys.length - other.collationKeys.length;
+        }
+    }
+}
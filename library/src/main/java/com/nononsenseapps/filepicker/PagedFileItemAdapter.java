@@ -0,0 +1,414 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link FileItemAdapter} which can also show a {@link PagedSource}. Items are then loaded
+ * in fixed-size pages around the rows being bound, and pages far from them are dropped, so
+ * only a few pages are in memory however big the directory is. Rows whose page has not been
+ * loaded yet are bound as placeholders. Pages holding selected items are kept, so that the
+ * selection can be returned, unless the source is a {@link ListPagedSource} whose items can
+ * be read at any time.
+ * <p/>
+ * Replacing or modifying the list in any other way leaves paged mode.
+ *
+ * @param <T> the type which is used, for example a normal java File object.
+ */
+public class PagedFileItemAdapter<T> extends FileItemAdapter<T> {
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final int DEFAULT_MAX_PAGES = 8;
+    private static final String TAG = "PagedFileItemAdapter";
+
+    protected final PagedLogicHandler<T> mPagedLogic;
+    private PagedSource<T> mSource = null;
+    // Number of items shown, which follows the source as it learns about more items
+    private int mCount = 0;
+    private int mPageSize = DEFAULT_PAGE_SIZE;
+    private int mMaxPages = DEFAULT_MAX_PAGES;
+    private Executor mLoadExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
+    private Handler mMainHandler = null;
+    // Indexed by page, null where not loaded, so that binding does not box page numbers
+    private final ArrayList<List<T>> mPages = new ArrayList<>();
+    private int mLoadedPageCount = 0;
+    private final BitSet mLoadingPages = new BitSet();
+    // The page read last, pages are evicted by their distance from it
+    private int mFocusPage = 0;
+    // Incremented for every new source, so that outdated pages are dropped
+    private int mSourceGeneration = 0;
+
+    public PagedFileItemAdapter(@NonNull PagedLogicHandler<T> logic) {
+        super(logic);
+        this.mPagedLogic = logic;
+    }
+
+    /**
+     * Show a paged source instead of a list. Selections are cleared.
+     *
+     * @param source to show, or null to go back to showing an empty list
+     */
+    public void setSource(@Nullable PagedSource<T> source) {
+        // Drops any diff in progress
+        super.replaceAll(new ArrayList<T>());
+        mSourceGeneration++;
+        mPages.clear();
+        mLoadedPageCount = 0;
+        mLoadingPages.clear();
+        mFocusPage = 0;
+        mSource = source;
+        mCount = source == null ? 0 : source.size();
+        mSelection.reset(mCount);
+        notifyDataSetChanged();
+        if (source != null && mCount == 0 && source.hasMore()) {
+            requestPage(0);
+        }
+    }
+
+    /**
+     * @return the source being shown, or null if a list is shown
+     */
+    @Nullable
+    public PagedSource<T> getSource() {
+        return mSource;
+    }
+
+    /**
+     * @param pageSize number of items loaded at once. Pages already loaded are dropped.
+     */
+    public void setPageSize(int pageSize) {
+        mPageSize = Math.max(1, pageSize);
+        if (mSource != null) {
+            setSource(mSource);
+        }
+    }
+
+    /**
+     * @param maxPages number of pages kept in memory, at least three so that the pages on
+     *                 both sides of the one being shown fit
+     */
+    public void setMaxPages(int maxPages) {
+        mMaxPages = Math.max(3, maxPages);
+    }
+
+    /**
+     * Set where pages are loaded. The default is the shared {@link AsyncTask} thread pool.
+     *
+     * @param loadExecutor to load pages on, or null to load them on the main thread
+     */
+    public void setLoadExecutor(@Nullable Executor loadExecutor) {
+        mLoadExecutor = loadExecutor;
+    }
+
+    /**
+     * @return the number of pages in memory
+     */
+    public int getLoadedPageCount() {
+        return mLoadedPageCount;
+    }
+
+    @Override
+    public int getItemCount() {
+        if (mSource == null) {
+            return super.getItemCount();
+        }
+        // header + count
+        return 1 + mCount;
+    }
+
+    /**
+     * In paged mode, the item is null until its page has been loaded. Reading it requests
+     * the page.
+     */
+    @Nullable
+    @Override
+    protected T getItem(int position) {
+        if (mSource == null) {
+            return super.getItem(position);
+        }
+        if (position == 0) {
+            return null;
+        }
+        return getPagedItem(position - 1);
+    }
+
+    @Nullable
+    @Override
+    protected T peekItem(int pos) {
+        if (mSource == null) {
+            return super.peekItem(pos);
+        }
+        if (mSource instanceof ListPagedSource) {
+            // Every item can be read, whether its page is loaded or not
+            final List<T> list = ((ListPagedSource<T>) mSource).getList();
+            return pos < list.size() ? list.get(pos) : null;
+        }
+        final List<T> page = getPage(pos / mPageSize);
+        final int offset = pos % mPageSize;
+        return page == null || offset >= page.size() ? null : page.get(offset);
+    }
+
+    /**
+     * In paged mode, only a {@link ListPagedSource} has all of its items in memory.
+     */
+    @Nullable
+    @Override
+    public List<T> getShownItems() {
+        if (mSource == null) {
+            return super.getShownItems();
+        }
+        return mSource instanceof ListPagedSource ? ((ListPagedSource<T>) mSource).getList() :
+                null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int headerPosition) {
+        if (mSource == null || headerPosition == 0) {
+            super.onBindViewHolder(viewHolder, headerPosition);
+            return;
+        }
+        final int pos = headerPosition - 1;
+        final T item = getPagedItem(pos);
+        final AbstractFilePickerFragment<T>.DirViewHolder vh =
+                (AbstractFilePickerFragment<T>.DirViewHolder) viewHolder;
+        if (item == null) {
+            mPagedLogic.onBindPlaceholderViewHolder(vh, pos);
+        } else {
+            mLogic.onBindViewHolder(vh, pos, item);
+        }
+        prefetchAround(pos / mPageSize);
+    }
+
+    @Override
+    public int getItemViewType(int headerPosition) {
+        if (mSource == null || headerPosition == 0) {
+            return super.getItemViewType(headerPosition);
+        }
+        final int pos = headerPosition - 1;
+        final T item = getPagedItem(pos);
+        return item == null ? LogicHandler.VIEWTYPE_DIR : mLogic.getItemViewType(pos, item);
+    }
+
+    /**
+     * The id of a row does not change when its page is loaded, as stable ids require. Items of
+     * a {@link ListPagedSource} can always be read, so they get the id of their path as in a
+     * list. Other sources only add items at the end while they are shown, so their rows are
+     * identified by position.
+     */
+    @Override
+    public long getItemId(int position) {
+        if (mSource == null || position == 0) {
+            return super.getItemId(position);
+        }
+        if (mSource instanceof ListPagedSource) {
+            final T item = peekItem(position - 1);
+            if (item != null) {
+                return getPathId(mLogic.getFullPath(item));
+            }
+        }
+        return HEADER_ID + position;
+    }
+
+    @Nullable
+    private T getPagedItem(int pos) {
+        final int pageIndex = pos / mPageSize;
+        mFocusPage = pageIndex;
+        List<T> page = getPage(pageIndex);
+        final int offset = pos - pageIndex * mPageSize;
+        if (page == null || offset >= page.size()) {
+            requestPage(pageIndex);
+            // Loaded right away without a load executor
+            page = getPage(pageIndex);
+            if (page == null || offset >= page.size()) {
+                return null;
+            }
+        }
+        return page.get(offset);
+    }
+
+    private void prefetchAround(int pageIndex) {
+        final int lastPage = (mCount - 1) / mPageSize;
+        if (pageIndex > 0 && getPage(pageIndex - 1) == null) {
+            requestPage(pageIndex - 1);
+        }
+        if (pageIndex + 1 <= lastPage && getPage(pageIndex + 1) == null) {
+            requestPage(pageIndex + 1);
+        } else if (pageIndex >= lastPage && mSource.hasMore()) {
+            // Near the end of what is known, ask the source for more
+            final List<T> last = getPage(lastPage);
+            requestPage(last != null && last.size() == mPageSize ? lastPage + 1 : lastPage);
+        }
+    }
+
+    private void requestPage(final int pageIndex) {
+        final PagedSource<T> source = mSource;
+        if (source == null || mLoadingPages.get(pageIndex)) {
+            return;
+        }
+        mLoadingPages.set(pageIndex);
+        final int generation = mSourceGeneration;
+        final int offset = pageIndex * mPageSize;
+        final int count = mPageSize;
+        final Executor executor = mLoadExecutor;
+        if (executor == null) {
+            onPageLoaded(generation, pageIndex, loadPage(source, offset, count));
+            return;
+        }
+        if (mMainHandler == null) {
+            mMainHandler = new Handler(Looper.getMainLooper());
+        }
+        executor.execute(() -> {
+            final List<T> page = loadPage(source, offset, count);
+            mMainHandler.post(() -> onPageLoaded(generation, pageIndex, page));
+        });
+    }
+
+    @Nullable
+    private static <T> List<T> loadPage(@NonNull PagedSource<T> source, int offset, int count) {
+        try {
+            return source.loadPage(offset, count);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to load items " + offset + " to " + (offset + count), e);
+            return null;
+        }
+    }
+
+    private void onPageLoaded(int generation, int pageIndex, @Nullable List<T> page) {
+        if (generation != mSourceGeneration) {
+            return;
+        }
+        mLoadingPages.clear(pageIndex);
+        if (page == null) {
+            // Requested again when one of its rows is bound
+            return;
+        }
+        while (mPages.size() <= pageIndex) {
+            mPages.add(null);
+        }
+        if (mPages.set(pageIndex, page) == null) {
+            mLoadedPageCount++;
+        }
+        evictPages();
+
+        final int size = mSource.size();
+        if (size > mCount) {
+            mSelection.resize(size);
+            notifyItemRangeInserted(mCount + 1, size - mCount);
+            mCount = size;
+        } else if (size < mCount) {
+            mSelection.resize(size);
+            notifyItemRangeRemoved(size + 1, mCount - size);
+            mCount = size;
+        }
+        final int start = pageIndex * mPageSize;
+        final int changed = Math.min(page.size(), mCount - start);
+        // A page far from the rows being shown may have been evicted right away
+        if (changed > 0 && getPage(pageIndex) != null) {
+            // Add one for the header
+            notifyItemRangeChanged(start + 1, changed);
+        }
+    }
+
+    @Nullable
+    private List<T> getPage(int pageIndex) {
+        return pageIndex < mPages.size() ? mPages.get(pageIndex) : null;
+    }
+
+    private void evictPages() {
+        while (mLoadedPageCount > mMaxPages) {
+            int farthest = -1;
+            int farthestDistance = -1;
+            for (int pageIndex = 0; pageIndex < mPages.size(); pageIndex++) {
+                final int distance = Math.abs(pageIndex - mFocusPage);
+                if (mPages.get(pageIndex) != null && distance > farthestDistance &&
+                        !hasSelection(pageIndex)) {
+                    farthest = pageIndex;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest < 0) {
+                // Every page holds selected items
+                return;
+            }
+            mPages.set(farthest, null);
+            mLoadedPageCount--;
+        }
+    }
+
+    private boolean hasSelection(int pageIndex) {
+        if (mSource instanceof ListPagedSource) {
+            // Selected items are read from the list, see peekItem()
+            return false;
+        }
+        final int selected = mSelection.nextSelected(pageIndex * mPageSize);
+        return selected >= 0 && selected < (pageIndex + 1) * mPageSize;
+    }
+
+    /**
+     * Go back to showing a list before it is modified.
+     */
+    private void leavePagedMode() {
+        if (mSource != null) {
+            setSource(null);
+        }
+    }
+
+    @Override
+    public void replaceAll(List<T> data) {
+        leavePagedMode();
+        super.replaceAll(data);
+    }
+
+    @Override
+    public void submitList(@NonNull List<T> data,
+                           @NonNull DiffUtil.ItemCallback<T> itemCallback) {
+        leavePagedMode();
+        super.submitList(data, itemCallback);
+    }
+
+    @Override
+    public void replaceAllWithDiff(@NonNull List<T> data,
+                                   @NonNull DiffUtil.ItemCallback<T> itemCallback) {
+        leavePagedMode();
+        super.replaceAllWithDiff(data, itemCallback);
+    }
+
+    @Override
+    public void insertItem(int position, @NonNull T item) {
+        leavePagedMode();
+        super.insertItem(position, item);
+    }
+
+    @Override
+    public void removeItem(int position) {
+        leavePagedMode();
+        super.removeItem(position);
+    }
+
+    @Override
+    public void addAllSorted(@NonNull List<T> sortedItems,
+                             @NonNull Comparator<? super T> comparator) {
+        leavePagedMode();
+        super.addAllSorted(sortedItems, comparator);
+    }
+}
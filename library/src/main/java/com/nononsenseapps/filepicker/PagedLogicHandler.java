@@ -0,0 +1,36 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A {@link LogicHandler} for backends which can list directories a page at a time, shown by a
+ * {@link PagedFileItemAdapter}.
+ */
+public interface PagedLogicHandler<T> extends LogicHandler<T> {
+
+    /**
+     * Called on the main thread before a directory is listed.
+     *
+     * @param dir which is about to be shown
+     * @return a source to page through the directory with, or null to list it completely
+     * with {@link #getLoader()}
+     */
+    @Nullable
+    PagedSource<T> getPagedSource(@NonNull final T dir);
+
+    /**
+     * Bind a row whose item has not been loaded yet. It is bound again once it has.
+     *
+     * @param viewHolder of type {@link #VIEWTYPE_DIR}
+     * @param position   0 - n, where the header has been subtracted
+     */
+    void onBindPlaceholderViewHolder(@NonNull AbstractFilePickerFragment<T>.DirViewHolder viewHolder,
+                                     int position);
+}
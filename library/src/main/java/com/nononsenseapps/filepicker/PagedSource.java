@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * The items of a directory, read a page at a time by a {@link PagedFileItemAdapter} instead
+ * of being held in memory all at once. Items must be in the order they are shown.
+ * <p/>
+ * Sources which do not know how many items there are, such as remote listings which are
+ * fetched in batches, report what they know so far and grow as pages past the end are loaded.
+ */
+public interface PagedSource<T> {
+
+    /**
+     * Called on the main thread.
+     *
+     * @return the number of items known so far
+     */
+    int size();
+
+    /**
+     * Called on the main thread.
+     *
+     * @return true if loading past {@link #size()} may find more items
+     */
+    boolean hasMore();
+
+    /**
+     * Load a page of items. Called on a background thread, possibly several at once.
+     *
+     * @param offset of the first item
+     * @param count  of items wanted
+     * @return the items, fewer than count at the end of the directory
+     * @throws Exception if the items could not be read, the page is then requested again
+     *                   when it is shown
+     */
+    @NonNull
+    List<T> loadPage(int offset, int count) throws Exception;
+}
@@ -0,0 +1,73 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Filters listings on all cores, for directories which are large enough that splitting the
+ * work up pays off. Sorting is done by {@link NameSorter#parallelSort(List, LogicHandler)}.
+ */
+final class ParallelListing {
+
+    interface Filter<T> {
+        /**
+         * Called from several threads at once.
+         *
+         * @return true if the item should be kept
+         */
+        boolean accept(@NonNull T item);
+    }
+
+    private ParallelListing() {
+    }
+
+    /**
+     * @return the items accepted by the filter, in their original order
+     */
+    @NonNull
+    static <T> ArrayList<T> filter(@NonNull List<T> items, @NonNull Filter<T> filter) {
+        final ArrayList<T> result = new ArrayList<>(items.size());
+        for (T item : items) {
+            if (filter.accept(item)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #filter(List, Filter)}, but evaluates the filter in parallel.
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    @NonNull
+    static <T> ArrayList<T> parallelFilter(@NonNull List<T> items, @NonNull Filter<T> filter) {
+        final Object[] array = items.toArray();
+        // Rejected items are cleared, then the remaining ones are collected in order
+        Arrays.parallelSetAll(array, i -> {
+            @SuppressWarnings("unchecked")
+            final T item = (T) array[i];
+            return filter.accept(item) ? item : null;
+        });
+        final ArrayList<T> result = new ArrayList<>(array.length);
+        for (Object item : array) {
+            if (item != null) {
+                @SuppressWarnings("unchecked")
+                final T accepted = (T) item;
+                result.add(accepted);
+            }
+        }
+        return result;
+    }
+}
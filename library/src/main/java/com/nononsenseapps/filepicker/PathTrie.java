@@ -0,0 +1,262 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A set of full paths which stores every directory once, however many paths are below it.
+ * Paths are split at '/' into segments, and every segment is a node which only knows its
+ * name and its parent. Paths are stored exactly as given, so "/a/b" and "/a/b/" differ.
+ * <p/>
+ * Nodes are kept in parallel arrays and found through an open addressing table of
+ * (parent, name), so a path costs a few words per new segment and no objects apart from the
+ * names. Nodes which lead to no path anymore are dropped once they make up most of the trie.
+ */
+public class PathTrie {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // Per node, the root has no name and no parent
+    private String[] mNames;
+    private int[] mParents;
+    private int[] mFirstChildren;
+    private int[] mNextSiblings;
+    // Number of paths at or below every node
+    private int[] mCounts;
+    // Nodes which are the end of a path, rather than just a directory on the way
+    private final BitSet mEnds = new BitSet();
+    private int mNodeCount;
+    // Nodes with a count above zero
+    private int mLiveNodes;
+    // Node index plus one, zero for empty slots
+    private int[] mTable;
+
+    public PathTrie() {
+        clear();
+    }
+
+    /**
+     * @return the number of paths
+     */
+    public int size() {
+        return mCounts[ROOT];
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        mNames = new String[16];
+        mParents = new int[16];
+        mFirstChildren = new int[16];
+        mNextSiblings = new int[16];
+        mCounts = new int[16];
+        mTable = new int[32];
+        mEnds.clear();
+        mParents[ROOT] = NONE;
+        mFirstChildren[ROOT] = NONE;
+        mNextSiblings[ROOT] = NONE;
+        mNodeCount = 1;
+        mLiveNodes = 0;
+    }
+
+    /**
+     * @return true if the path was not in the set before
+     */
+    public boolean add(@NonNull String path) {
+        int node = ROOT;
+        int start = 0;
+        while (true) {
+            final int end = segmentEnd(path, start);
+            int child = findChild(node, path, start, end);
+            if (child == NONE) {
+                child = newNode(node, path.substring(start, end));
+            }
+            node = child;
+            if (end == path.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (mEnds.get(node)) {
+            return false;
+        }
+        mEnds.set(node);
+        addToCounts(node, 1);
+        return true;
+    }
+
+    public boolean contains(@NonNull String path) {
+        final int node = find(path);
+        return node != NONE && mEnds.get(node);
+    }
+
+    /**
+     * @return true if the path was in the set
+     */
+    public boolean remove(@NonNull String path) {
+        final int node = find(path);
+        if (node == NONE || !mEnds.get(node)) {
+            return false;
+        }
+        mEnds.clear(node);
+        addToCounts(node, -1);
+        compactIfSparse();
+        return true;
+    }
+
+    /**
+     * @return every path, each directory before what is below it
+     */
+    @NonNull
+    public List<String> getPaths() {
+        final ArrayList<String> paths = new ArrayList<>(size());
+        if (!isEmpty()) {
+            collect(ROOT, new StringBuilder(), paths);
+        }
+        return paths;
+    }
+
+    private void collect(int node, @NonNull StringBuilder prefix,
+                         @NonNull List<String> paths) {
+        final int length = prefix.length();
+        for (int child = mFirstChildren[node]; child != NONE; child = mNextSiblings[child]) {
+            if (mCounts[child] == 0) {
+                continue;
+            }
+            if (node != ROOT) {
+                prefix.append('/');
+            }
+            prefix.append(mNames[child]);
+            if (mEnds.get(child)) {
+                paths.add(prefix.toString());
+            }
+            collect(child, prefix, paths);
+            prefix.setLength(length);
+        }
+    }
+
+    /**
+     * @return the position of the '/' ending the segment, or the end of the path
+     */
+    private static int segmentEnd(@NonNull String path, int start) {
+        final int slash = path.indexOf('/', start);
+        return slash < 0 ? path.length() : slash;
+    }
+
+    private int find(@NonNull String path) {
+        int node = ROOT;
+        int start = 0;
+        while (true) {
+            final int end = segmentEnd(path, start);
+            node = findChild(node, path, start, end);
+            if (node == NONE || end == path.length()) {
+                return node;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Look up a child by a part of a string, so that looking up paths does not allocate.
+     */
+    private int findChild(int parent, @NonNull String path, int start, int end) {
+        final int mask = mTable.length - 1;
+        for (int slot = hash(parent, path, start, end) & mask; ; slot = (slot + 1) & mask) {
+            final int entry = mTable[slot];
+            if (entry == 0) {
+                return NONE;
+            }
+            final int node = entry - 1;
+            final String name = mNames[node];
+            if (mParents[node] == parent && name.length() == end - start &&
+                    path.regionMatches(start, name, 0, name.length())) {
+                return node;
+            }
+        }
+    }
+
+    private static int hash(int parent, @NonNull String path, int start, int end) {
+        int hash = parent * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private int newNode(int parent, @NonNull String name) {
+        if (mNodeCount == mNames.length) {
+            final int capacity = 2 * mNodeCount;
+            mNames = Arrays.copyOf(mNames, capacity);
+            mParents = Arrays.copyOf(mParents, capacity);
+            mFirstChildren = Arrays.copyOf(mFirstChildren, capacity);
+            mNextSiblings = Arrays.copyOf(mNextSiblings, capacity);
+            mCounts = Arrays.copyOf(mCounts, capacity);
+        }
+        final int node = mNodeCount++;
+        mNames[node] = name;
+        mParents[node] = parent;
+        mFirstChildren[node] = NONE;
+        mNextSiblings[node] = mFirstChildren[parent];
+        mFirstChildren[parent] = node;
+        mCounts[node] = 0;
+        // Keep the table at most half full
+        if (2 * mNodeCount > mTable.length) {
+            mTable = new int[2 * mTable.length];
+            for (int i = 1; i < mNodeCount; i++) {
+                insertIntoTable(i);
+            }
+        } else {
+            insertIntoTable(node);
+        }
+        return node;
+    }
+
+    private void insertIntoTable(int node) {
+        final int mask = mTable.length - 1;
+        final String name = mNames[node];
+        int slot = hash(mParents[node], name, 0, name.length()) & mask;
+        while (mTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        mTable[slot] = node + 1;
+    }
+
+    private void addToCounts(int node, int delta) {
+        for (int n = node; n != NONE; n = mParents[n]) {
+            final int before = mCounts[n];
+            mCounts[n] = before + delta;
+            if (before == 0) {
+                mLiveNodes++;
+            } else if (mCounts[n] == 0) {
+                mLiveNodes--;
+            }
+        }
+    }
+
+    /**
+     * Build the trie again from its paths once most nodes lead nowhere.
+     */
+    private void compactIfSparse() {
+        if (mNodeCount < 64 || 2 * mLiveNodes > mNodeCount) {
+            return;
+        }
+        final List<String> paths = getPaths();
+        clear();
+        for (String path : paths) {
+            add(path);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * A file holding the Uris of a selection, see {@link SelectionManifestProvider}. The first
+ * line is the number of entries and every following line is one Uri, which can not contain a
+ * line break since it is encoded.
+ * <p/>
+ * Entries are read one at a time, so only the current one is kept in memory. Reading forward
+ * is cheap, reading backwards starts over from the top of the file.
+ */
+class SelectionManifest implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private final int mCount;
+    private BufferedReader mReader;
+    // Index of the entry in mEntry, -1 before the first
+    private int mPosition = -1;
+    private String mEntry = null;
+
+    /**
+     * @throws IOException if the file can not be read or is not a manifest
+     */
+    SelectionManifest(@NonNull File file) throws IOException {
+        mFile = file;
+        mReader = open(file);
+        final String header = mReader.readLine();
+        try {
+            mCount = header == null ? -1 : Integer.parseInt(header);
+        } catch (NumberFormatException e) {
+            mReader.close();
+            throw new IOException("Not a selection manifest: " + file);
+        }
+        if (mCount < 0) {
+            mReader.close();
+            throw new IOException("Not a selection manifest: " + file);
+        }
+    }
+
+    /**
+     * Write the entries to a temporary file first and rename it, so that a manifest is never
+     * seen half written.
+     */
+    static void write(@NonNull File file, @NonNull List<String> entries) throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        final Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(temp), UTF_8));
+        try {
+            writer.write(Integer.toString(entries.size()));
+            writer.write('\n');
+            for (String entry : entries) {
+                writer.write(entry);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Failed to write " + file);
+        }
+    }
+
+    @NonNull
+    private static BufferedReader open(@NonNull File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the entry at the position, or null if the position is out of range or the file
+     * ends early
+     */
+    @Nullable
+    String get(int position) throws IOException {
+        if (position < 0 || position >= mCount) {
+            return null;
+        }
+        if (position < mPosition) {
+            mReader.close();
+            mReader = open(mFile);
+            mReader.readLine();
+            mPosition = -1;
+        }
+        while (mPosition < position) {
+            mEntry = mReader.readLine();
+            if (mEntry == null) {
+                return null;
+            }
+            mPosition++;
+        }
+        return mEntry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
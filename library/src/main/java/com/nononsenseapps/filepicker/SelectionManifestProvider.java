@@ -0,0 +1,246 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.BaseColumns;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Serves selections which are too large to be returned in an Intent, see
+ * {@link AbstractFilePickerActivity#EXTRA_RESULT_MANIFEST}. The picker writes the Uris of the
+ * selection to a manifest file in the cache and returns a single Uri to it. Querying that Uri
+ * gives a cursor with the columns {@link BaseColumns#_ID} and {@link #COLUMN_URI}, which reads
+ * the file as it is moved, so even a huge selection is never held in memory at once.
+ * <p/>
+ * The provider is declared in the library manifest with the authority
+ * "${applicationId}.nnf.selection". Manifests are removed by {@link #delete}, or when a new
+ * one is written a day later.
+ */
+public class SelectionManifestProvider extends ContentProvider {
+
+    public static final String COLUMN_URI = "uri";
+    public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.nononsense.selection";
+
+    private static final String DIRECTORY = "nnf_selections";
+    private static final long MAX_AGE_MS = 24L * 60 * 60 * 1000;
+    private static final String[] COLUMNS = {BaseColumns._ID, COLUMN_URI};
+
+    @NonNull
+    public static String getAuthority(@NonNull Context context) {
+        return context.getPackageName() + ".nnf.selection";
+    }
+
+    /**
+     * Write a manifest and remove the ones which have been left behind. This touches the disk
+     * for every entry, call it on a background thread.
+     *
+     * @param uris of the selection, as strings
+     * @return the Uri to query for the selection
+     */
+    @NonNull
+    public static Uri writeManifest(@NonNull Context context, @NonNull List<String> uris)
+            throws IOException {
+        final File dir = new File(context.getCacheDir(), DIRECTORY);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        pruneManifests(dir, System.currentTimeMillis() - MAX_AGE_MS);
+        final String name = UUID.randomUUID().toString();
+        SelectionManifest.write(new File(dir, name), uris);
+        return new Uri.Builder().scheme("content").authority(getAuthority(context))
+                .appendPath(name).build();
+    }
+
+    private static void pruneManifests(@NonNull File dir, long olderThan) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.lastModified() < olderThan) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the manifest file of the uri, or null if the uri does not name one. Names are
+     * checked, so that a uri can not lead outside of the manifest directory.
+     */
+    @Nullable
+    private File getManifestFile(@NonNull Uri uri) {
+        final List<String> segments = uri.getPathSegments();
+        final Context context = getContext();
+        if (context == null || segments.size() != 1) {
+            return null;
+        }
+        final String name = segments.get(0);
+        try {
+            if (!UUID.fromString(name).toString().equals(name)) {
+                return null;
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return new File(new File(context.getCacheDir(), DIRECTORY), name);
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection,
+                        @Nullable String selection, @Nullable String[] selectionArgs,
+                        @Nullable String sortOrder) {
+        final File file = getManifestFile(uri);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new ManifestCursor(new SelectionManifest(file));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return getManifestFile(uri) == null ? null : CONTENT_TYPE;
+    }
+
+    /**
+     * The raw manifest, for callers which prefer to read the lines themselves.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+        final File file = getManifestFile(uri);
+        if (file == null || !"r".equals(mode)) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("Manifests are read only");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values,
+                      @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Manifests are read only");
+    }
+
+    /**
+     * Remove the manifest once the caller has read it.
+     */
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        final File file = getManifestFile(uri);
+        return file != null && file.delete() ? 1 : 0;
+    }
+
+    /**
+     * Reads the entry of the manifest when moved to it. Windows sent to other processes are
+     * filled by moving forward, which reads the file once from the top.
+     */
+    private static class ManifestCursor extends AbstractCursor {
+        private final SelectionManifest mManifest;
+        private String mEntry = null;
+
+        ManifestCursor(@NonNull SelectionManifest manifest) {
+            mManifest = manifest;
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            try {
+                mEntry = mManifest.get(newPosition);
+            } catch (IOException e) {
+                mEntry = null;
+            }
+            return mEntry != null;
+        }
+
+        @Override
+        public int getCount() {
+            return mManifest.getCount();
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return COLUMNS;
+        }
+
+        @Override
+        public String getString(int column) {
+            return column == 0 ? Integer.toString(getPosition()) : mEntry;
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return column == 0 ? getPosition() : Long.parseLong(mEntry);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return column != 0 && mEntry == null;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            try {
+                mManifest.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Which items of a list are selected, as one bit per position. The number of selected items
+ * is kept up to date, and bulk operations like selecting everything, inverting or combining
+ * with a mask work on 64 positions at a time.
+ * <p/>
+ * Positions are those of the list shown by a {@link FileItemAdapter}, not counting the header.
+ * The adapter moves the bits along whenever items are inserted, removed or moved, so that
+ * selections follow their items.
+ */
+public class SelectionModel {
+
+    private static final long[] EMPTY = new long[0];
+
+    // Bits above size are always zero
+    private long[] mWords = EMPTY;
+    private int mSize = 0;
+    private int mCount = 0;
+    // Incremented whenever positions may refer to other items than before
+    private int mGeneration = 0;
+
+    /**
+     * @return the number of positions
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of selected positions
+     */
+    public int getSelectedCount() {
+        return mCount;
+    }
+
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    /**
+     * @return a number which changes whenever items are inserted, removed, moved or changed,
+     * so that masks built for the old positions can be told apart
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Mark masks built for the current positions as outdated, for example because items were
+     * replaced by changed ones.
+     */
+    public void invalidate() {
+        mGeneration++;
+    }
+
+    public boolean isSelected(int position) {
+        return position >= 0 && position < mSize &&
+                (mWords[position >>> 6] & (1L << position)) != 0;
+    }
+
+    public void setSelected(int position, boolean selected) {
+        checkPosition(position);
+        final int word = position >>> 6;
+        final long bit = 1L << position;
+        if (((mWords[word] & bit) != 0) != selected) {
+            mWords[word] ^= bit;
+            mCount += selected ? 1 : -1;
+        }
+    }
+
+    /**
+     * @return true if the position is selected afterwards
+     */
+    public boolean toggle(int position) {
+        final boolean selected = !isSelected(position);
+        setSelected(position, selected);
+        return selected;
+    }
+
+    /**
+     * Select or deselect a range of positions, for example for shift clicks or drag selection.
+     *
+     * @param from     first position, inclusive
+     * @param to       last position, exclusive
+     * @param selected true to select them
+     */
+    public void setRange(int from, int to, boolean selected) {
+        if (from < 0 || to > mSize || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " of " + mSize);
+        }
+        if (from == to) {
+            return;
+        }
+        final int first = from >>> 6;
+        final int last = (to - 1) >>> 6;
+        for (int word = first; word <= last; word++) {
+            long mask = -1L;
+            if (word == first) {
+                mask &= -1L << from;
+            }
+            if (word == last) {
+                mask &= -1L >>> -to;
+            }
+            final long old = mWords[word];
+            mWords[word] = selected ? old | mask : old & ~mask;
+            mCount += Long.bitCount(mWords[word]) - Long.bitCount(old);
+        }
+    }
+
+    /**
+     * Select every position.
+     */
+    public void selectAll() {
+        setRange(0, mSize, true);
+    }
+
+    /**
+     * Deselect every position.
+     */
+    public void clear() {
+        Arrays.fill(mWords, 0L);
+        mCount = 0;
+    }
+
+    /**
+     * Select every position which is selected in the mask as well.
+     *
+     * @param mask of the same size
+     */
+    public void select(@NonNull SelectionModel mask) {
+        final int words = Math.min(mWords.length, mask.mWords.length);
+        for (int i = 0; i < words; i++) {
+            final long old = mWords[i];
+            mWords[i] = old | mask.mWords[i];
+            mCount += Long.bitCount(mWords[i]) - Long.bitCount(old);
+        }
+        clearAbove(mSize);
+    }
+
+    /**
+     * Deselect every position which is not selected in the mask.
+     *
+     * @param mask of the same size
+     */
+    public void retain(@NonNull SelectionModel mask) {
+        for (int i = 0; i < mWords.length; i++) {
+            final long old = mWords[i];
+            mWords[i] = i < mask.mWords.length ? old & mask.mWords[i] : 0L;
+            mCount += Long.bitCount(mWords[i]) - Long.bitCount(old);
+        }
+    }
+
+    /**
+     * Invert the selection of every position which is selected in the mask, for example of
+     * every item which can be selected at all.
+     *
+     * @param mask of the same size
+     */
+    public void invert(@NonNull SelectionModel mask) {
+        final int words = Math.min(mWords.length, mask.mWords.length);
+        for (int i = 0; i < words; i++) {
+            final long old = mWords[i];
+            mWords[i] = old ^ mask.mWords[i];
+            mCount += Long.bitCount(mWords[i]) - Long.bitCount(old);
+        }
+        clearAbove(mSize);
+    }
+
+    /**
+     * Iterate over the selection with
+     * {@code for (int i = nextSelected(0); i >= 0; i = nextSelected(i + 1))}.
+     *
+     * @param from position to start looking at
+     * @return the first selected position at or after from, or -1 if there is none
+     */
+    public int nextSelected(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        if (from >= mSize) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = mWords[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == mWords.length) {
+                return -1;
+            }
+            bits = mWords[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Replace all positions with new ones, none of which is selected.
+     *
+     * @param size number of positions
+     */
+    public void reset(int size) {
+        if (wordsFor(size) == mWords.length) {
+            Arrays.fill(mWords, 0L);
+        } else {
+            mWords = new long[wordsFor(size)];
+        }
+        mSize = size;
+        mCount = 0;
+        mGeneration++;
+    }
+
+    /**
+     * Add or drop positions at the end, for example as a paged directory grows.
+     *
+     * @param size new number of positions
+     */
+    public void resize(int size) {
+        if (size == mSize) {
+            return;
+        }
+        if (size < mSize) {
+            mCount -= countRange(size, mSize);
+        }
+        mWords = Arrays.copyOf(mWords, wordsFor(size));
+        clearAbove(size);
+        mSize = size;
+        mGeneration++;
+    }
+
+    /**
+     * Make room for items which were inserted. The new positions are not selected.
+     *
+     * @param position where the first item was inserted
+     * @param count    number of inserted items
+     */
+    public void insert(int position, int count) {
+        if (position < 0 || position > mSize) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + mSize);
+        }
+        final long[] words = new long[wordsFor(mSize + count)];
+        copyBits(mWords, 0, words, 0, position);
+        copyBits(mWords, position, words, position + count, mSize - position);
+        mWords = words;
+        mSize += count;
+        mGeneration++;
+    }
+
+    /**
+     * Drop the positions of items which were removed, along with their selection.
+     *
+     * @param position of the first removed item
+     * @param count    number of removed items
+     */
+    public void remove(int position, int count) {
+        if (position < 0 || count < 0 || position + count > mSize) {
+            throw new IndexOutOfBoundsException("Range " + position + " to " +
+                    (position + count) + " of " + mSize);
+        }
+        mCount -= countRange(position, position + count);
+        final long[] words = new long[wordsFor(mSize - count)];
+        copyBits(mWords, 0, words, 0, position);
+        copyBits(mWords, position + count, words, position, mSize - position - count);
+        mWords = words;
+        mSize -= count;
+        mGeneration++;
+    }
+
+    /**
+     * Move the selection of an item which was moved, like {@link
+     * androidx.recyclerview.widget.ListUpdateCallback#onMoved(int, int)}.
+     *
+     * @param from position before the move
+     * @param to   position after the move
+     */
+    public void move(int from, int to) {
+        checkPosition(from);
+        checkPosition(to);
+        if (from == to) {
+            return;
+        }
+        final boolean selected = isSelected(from);
+        // The items in between move one step towards from, in place
+        if (from < to) {
+            shiftDown(from, to + 1);
+        } else {
+            shiftUp(to, from + 1);
+        }
+        final int word = to >>> 6;
+        final long bit = 1L << to;
+        mWords[word] = selected ? mWords[word] | bit : mWords[word] & ~bit;
+        mGeneration++;
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + mSize);
+        }
+    }
+
+    /**
+     * Move every bit in the range one position down, the last one is left for the caller.
+     *
+     * @param from first position, inclusive
+     * @param to   last position, exclusive
+     */
+    private void shiftDown(int from, int to) {
+        final int first = from >>> 6;
+        final int last = (to - 1) >>> 6;
+        // Upwards, so each word reads the next one before it is shifted
+        for (int word = first; word <= last; word++) {
+            final long carry = word + 1 < mWords.length ? mWords[word + 1] << 63 : 0L;
+            final long mask = rangeMask(word, first, last, from, to);
+            mWords[word] = (mWords[word] & ~mask) | (((mWords[word] >>> 1) | carry) & mask);
+        }
+    }
+
+    /**
+     * Move every bit in the range one position up, the first one is left for the caller.
+     *
+     * @param from first position, inclusive
+     * @param to   last position, exclusive
+     */
+    private void shiftUp(int from, int to) {
+        final int first = from >>> 6;
+        final int last = (to - 1) >>> 6;
+        // Downwards, so each word reads the previous one before it is shifted
+        for (int word = last; word >= first; word--) {
+            final long carry = word > 0 ? mWords[word - 1] >>> 63 : 0L;
+            final long mask = rangeMask(word, first, last, from, to);
+            mWords[word] = (mWords[word] & ~mask) | (((mWords[word] << 1) | carry) & mask);
+        }
+    }
+
+    /**
+     * @return the bits of the word which lie in the range, see {@link #setRange}
+     */
+    private static long rangeMask(int word, int first, int last, int from, int to) {
+        long mask = -1L;
+        if (word == first) {
+            mask &= -1L << from;
+        }
+        if (word == last) {
+            mask &= -1L >>> -to;
+        }
+        return mask;
+    }
+
+    private static int wordsFor(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * Zero the bits from the position up to the end of its word, the words above are unused.
+     */
+    private void clearAbove(int position) {
+        if ((position & 63) != 0 && (position >>> 6) < mWords.length) {
+            mWords[position >>> 6] &= -1L >>> -position;
+        }
+    }
+
+    private int countRange(int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i += 64) {
+            final int n = Math.min(64, to - i);
+            count += Long.bitCount(bitsAt(mWords, i) & lowBits(n));
+        }
+        return count;
+    }
+
+    /**
+     * @return the mask of the lowest n bits, 0 - 64
+     */
+    private static long lowBits(int n) {
+        return n == 64 ? -1L : (1L << n) - 1;
+    }
+
+    /**
+     * @return the 64 bits starting at the position, bits beyond the array being zero
+     */
+    private static long bitsAt(@NonNull long[] words, int position) {
+        final int word = position >>> 6;
+        final int offset = position & 63;
+        long bits = word < words.length ? words[word] >>> offset : 0L;
+        if (offset != 0 && word + 1 < words.length) {
+            bits |= words[word + 1] << (64 - offset);
+        }
+        return bits;
+    }
+
+    /**
+     * Copy a run of bits a word at a time. The target range must be zero.
+     */
+    private static void copyBits(@NonNull long[] src, int from, @NonNull long[] dst, int to,
+                                 int length) {
+        while (length > 0) {
+            final int offset = to & 63;
+            final int n = Math.min(64 - offset, length);
+            dst[to >>> 6] |= (bitsAt(src, from) & lowBits(n)) << offset;
+            from += n;
+            to += n;
+            length -= n;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.webkit.MimeTypeMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Decides which files to show based on their extension, given a list of extensions and a list
+ * of MIME types. A file is accepted if either list matches it. MIME types may end in a
+ * wildcard, like "image/*", and "*&#47;*" accepts every file.
+ * <p/>
+ * The lists are compiled into a hash table of lower case extensions, which is looked up
+ * straight from the file name, without creating any objects. Extensions matched against the
+ * MIME types are resolved once with a {@link MimeTypeResolver} and remembered.
+ * <p/>
+ * Instances may be used from several threads at once.
+ */
+public final class TypeFilter {
+
+    // Extensions resolved from MIME types which are remembered, beyond this they are resolved
+    // on every call
+    static final int MAX_RESOLVED = 256;
+
+    private final String[] extensions;
+    private final String[] mimeTypes;
+    private final MimeTypeResolver resolver;
+    private final HashSet<String> exactMimeTypes = new HashSet<>();
+    private final ArrayList<String> mimePrefixes = new ArrayList<>();
+    private final boolean acceptAll;
+    // Replaced, never modified, when a resolved extension is added
+    private volatile SuffixTable table;
+
+    private TypeFilter(@NonNull String[] extensions, @NonNull String[] mimeTypes,
+                       @NonNull MimeTypeResolver resolver) {
+        this.extensions = extensions;
+        this.mimeTypes = mimeTypes;
+        this.resolver = resolver;
+        boolean acceptAll = false;
+        for (String mimeType : mimeTypes) {
+            if ("*/*".equals(mimeType) || "*".equals(mimeType)) {
+                acceptAll = true;
+            } else if (mimeType.endsWith("/*")) {
+                mimePrefixes.add(mimeType.substring(0, mimeType.length() - 1));
+            } else {
+                exactMimeTypes.add(mimeType);
+            }
+        }
+        this.acceptAll = acceptAll;
+
+        SuffixTable table = SuffixTable.EMPTY;
+        for (String extension : extensions) {
+            table = table.with(extension, true);
+        }
+        this.table = table;
+    }
+
+    /**
+     * Compile a filter which looks up MIME types with {@link MimeTypeMap}.
+     *
+     * @param extensions to accept, with or without the dot, in any case. May be null.
+     * @param mimeTypes  to accept, may be null
+     * @return a filter accepting files which match either list
+     */
+    @NonNull
+    public static TypeFilter compile(@Nullable String[] extensions, @Nullable String[] mimeTypes) {
+        return compile(extensions, mimeTypes,
+                extension -> MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension));
+    }
+
+    /**
+     * @param extensions to accept, with or without the dot, in any case. May be null.
+     * @param mimeTypes  to accept, may be null
+     * @param resolver   which tells the MIME type of an extension
+     * @return a filter accepting files which match either list
+     */
+    @NonNull
+    public static TypeFilter compile(@Nullable String[] extensions, @Nullable String[] mimeTypes,
+                                     @NonNull MimeTypeResolver resolver) {
+        final ArrayList<String> cleanExtensions = new ArrayList<>();
+        if (extensions != null) {
+            for (String extension : extensions) {
+                final String clean = toLowerCase(extension.startsWith(".") ?
+                        extension.substring(1) : extension);
+                if (!clean.isEmpty() && !cleanExtensions.contains(clean)) {
+                    cleanExtensions.add(clean);
+                }
+            }
+        }
+        final ArrayList<String> cleanMimeTypes = new ArrayList<>();
+        if (mimeTypes != null) {
+            for (String mimeType : mimeTypes) {
+                final String clean = toLowerCase(mimeType.trim());
+                if (!clean.isEmpty() && !cleanMimeTypes.contains(clean)) {
+                    cleanMimeTypes.add(clean);
+                }
+            }
+        }
+        return new TypeFilter(cleanExtensions.toArray(new String[0]),
+                cleanMimeTypes.toArray(new String[0]), resolver);
+    }
+
+    /**
+     * @param name of a file, directories should not be passed here
+     * @return true if the file should be shown
+     */
+    public boolean accepts(@NonNull String name) {
+        if (acceptAll) {
+            return true;
+        }
+        final int dot = name.lastIndexOf('.');
+        // Hidden files like ".profile" have no extension
+        if (dot <= 0 || dot == name.length() - 1) {
+            return false;
+        }
+        final SuffixTable current = table;
+        final int index = current.indexOf(name, dot + 1);
+        if (index >= 0) {
+            return current.accepted[index];
+        }
+        if (exactMimeTypes.isEmpty() && mimePrefixes.isEmpty()) {
+            return false;
+        }
+
+        // First time this extension is seen
+        final String extension = toLowerCase(name.substring(dot + 1));
+        final boolean accepted = matchesMimeType(resolver.getMimeType(extension));
+        synchronized (this) {
+            if (table.size < MAX_RESOLVED + extensions.length &&
+                    table.indexOf(extension, 0) < 0) {
+                table = table.with(extension, accepted);
+            }
+        }
+        return accepted;
+    }
+
+    private boolean matchesMimeType(@Nullable String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        final String type = toLowerCase(mimeType);
+        if (exactMimeTypes.contains(type)) {
+            return true;
+        }
+        for (String prefix : mimePrefixes) {
+            if (type.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the extensions which were compiled, lower case without the dot
+     */
+    @NonNull
+    public String[] getExtensions() {
+        return extensions.clone();
+    }
+
+    /**
+     * @return the MIME types which were compiled, lower case
+     */
+    @NonNull
+    public String[] getMimeTypes() {
+        return mimeTypes.clone();
+    }
+
+    /**
+     * @return the same string for all filters which accept the same files
+     */
+    @NonNull
+    String getKey() {
+        final String[] sortedExtensions = getExtensions();
+        final String[] sortedMimeTypes = getMimeTypes();
+        Arrays.sort(sortedExtensions);
+        Arrays.sort(sortedMimeTypes);
+        return Arrays.toString(sortedExtensions) + Arrays.toString(sortedMimeTypes);
+    }
+
+    /**
+     * Lower case every character on its own, the same way as the lookups do.
+     */
+    @NonNull
+    private static String toLowerCase(@NonNull String s) {
+        final char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    public interface MimeTypeResolver {
+        /**
+         * @param extension lower case, without the dot
+         * @return the MIME type of files with the extension, or null if unknown
+         */
+        @Nullable
+        String getMimeType(@NonNull String extension);
+    }
+
+    /**
+     * Open addressing hash table of lower case extensions. Looked up with a region of a file
+     * name, so that no substring has to be created.
+     */
+    private static final class SuffixTable {
+        static final SuffixTable EMPTY = new SuffixTable(new String[4], new boolean[4], 0);
+
+        final String[] keys;
+        final boolean[] accepted;
+        final int size;
+
+        SuffixTable(@NonNull String[] keys, @NonNull boolean[] accepted, int size) {
+            this.keys = keys;
+            this.accepted = accepted;
+            this.size = size;
+        }
+
+        /**
+         * @return the slot of the lower cased name from the given index on, or -1
+         */
+        int indexOf(@NonNull String name, int from) {
+            final int mask = keys.length - 1;
+            int index = hash(name, from) & mask;
+            String key;
+            while ((key = keys[index]) != null) {
+                if (regionEquals(key, name, from)) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * @return a copy of this table which also contains the key, which must be missing
+         */
+        @NonNull
+        SuffixTable with(@NonNull String key, boolean accept) {
+            int capacity = keys.length;
+            // Keep the table at most half full
+            while (capacity < (size + 1) * 2) {
+                capacity *= 2;
+            }
+            final String[] newKeys = new String[capacity];
+            final boolean[] newAccepted = new boolean[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    insert(newKeys, newAccepted, keys[i], accepted[i]);
+                }
+            }
+            insert(newKeys, newAccepted, key, accept);
+            return new SuffixTable(newKeys, newAccepted, size + 1);
+        }
+
+        private static void insert(@NonNull String[] keys, @NonNull boolean[] accepted,
+                                   @NonNull String key, boolean accept) {
+            final int mask = keys.length - 1;
+            int index = hash(key, 0) & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            accepted[index] = accept;
+        }
+
+        private static int hash(@NonNull String s, int from) {
+            int h = 0;
+            for (int i = from; i < s.length(); i++) {
+                h = 31 * h + Character.toLowerCase(s.charAt(i));
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean regionEquals(@NonNull String key, @NonNull String name, int from) {
+            if (key.length() != name.length() - from) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != Character.toLowerCase(name.charAt(from + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package com.nononsenseapps.filepicker;
 
+import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Build;
+import android.provider.BaseColumns;
 import android.text.TextUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import androidx.annotation.NonNull;
@@ -14,13 +20,16 @@ import androidx.annotation.Nullable;
 
 import static com.nononsenseapps.filepicker.AbstractFilePickerActivity.EXTRA_ALLOW_MULTIPLE;
 import static com.nononsenseapps.filepicker.AbstractFilePickerActivity.EXTRA_PATHS;
+import static com.nononsenseapps.filepicker.AbstractFilePickerActivity.EXTRA_RESULT_MANIFEST;
+import static com.nononsenseapps.filepicker.SelectionManifestProvider.COLUMN_URI;
 
 /**
  * Some utility methods
  */
 public class Utils {
 
-    private static final String SEP = "/";
+    // Below this many uris, resolving them on several cores does not pay off
+    private static final int PARALLEL_THRESHOLD = 64;
 
     /**
      * Name is validated to be non-null, non-empty and not containing any
@@ -45,17 +54,7 @@ public class Utils {
     @NonNull
     public static String appendPath(@NonNull String first,
                                     @NonNull String second) {
-        String result = first + SEP + second;
-
-        while (result.contains("//")) {
-            result = result.replaceAll("//", "/");
-        }
-
-        if (result.length() > 1 && result.endsWith(SEP)) {
-            return result.substring(0, result.length() - 1);
-        } else {
-            return result;
-        }
+        return FilePaths.join(first, second);
     }
 
     /**
@@ -70,6 +69,35 @@ public class Utils {
      */
     @NonNull
     public static File getFileForUri(@NonNull Uri uri) {
+        return getFileForUri(uri, CanonicalFiles.io());
+    }
+
+    /**
+     * Convert many uris like {@link #getFileForUri(Uri)} does. Every directory is resolved
+     * only once, and for many uris this happens on all cores, so this is much cheaper for
+     * a large selection than converting each uri. Call it on a background thread.
+     *
+     * @param uris generated from a file provider, for example by
+     *             {@link #getSelectedFilesFromResult(Intent)}
+     * @return Corresponding {@link File} objects, in the same order
+     */
+    @NonNull
+    public static List<File> getFilesForUris(@NonNull final List<Uri> uris) {
+        final CanonicalFiles canonicalFiles = CanonicalFiles.platformDefault();
+        final File[] files = new File[uris.size()];
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N &&
+                files.length >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSetAll(files, i -> getFileForUri(uris.get(i), canonicalFiles));
+        } else {
+            for (int i = 0; i < files.length; i++) {
+                files[i] = getFileForUri(uris.get(i), canonicalFiles);
+            }
+        }
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    @NonNull
+    private static File getFileForUri(@NonNull Uri uri, @NonNull CanonicalFiles canonicalFiles) {
         String path = uri.getEncodedPath();
         final int splitIndex = path.indexOf('/', 1);
         final String tag = Uri.decode(path.substring(1, splitIndex));
@@ -81,11 +109,21 @@ public class Utils {
                             tag));
         }
 
+        return resolveBelowRoot(path, canonicalFiles);
+    }
+
+    /**
+     * @param path relative to the root of the file system
+     * @return the canonical file
+     * @throws SecurityException if the path leads outside of the root
+     */
+    @NonNull
+    static File resolveBelowRoot(@NonNull String path, @NonNull CanonicalFiles canonicalFiles) {
         final File root = new File("/");
 
         File file = new File(root, path);
         try {
-            file = file.getCanonicalFile();
+            file = canonicalFiles.canonicalize(file);
         } catch (IOException e) {
             throw new IllegalArgumentException("Failed to resolve canonical path for " + file);
         }
@@ -100,11 +138,15 @@ public class Utils {
     /**
      * Parses the returned files from a filepicker activity into a nice list
      *
-     * @param data returned by the {@link AbstractFilePickerActivity}
+     * @param data returned by the {@link AbstractFilePickerActivity}, not as a manifest
      * @return a {@link List<Uri>} of files (uris) which the user selected in the picker.
      */
     @NonNull
     public static List<Uri> getSelectedFilesFromResult(@NonNull Intent data) {
+        if (data.getBooleanExtra(EXTRA_RESULT_MANIFEST, false)) {
+            throw new IllegalArgumentException(
+                    "Manifest results need a context, use querySelectedFiles(Context, Intent)");
+        }
         List<Uri> result = new ArrayList<>();
         if (data.getBooleanExtra(EXTRA_ALLOW_MULTIPLE, false)) {
             List<String> paths = data.getStringArrayListExtra(EXTRA_PATHS);
@@ -118,4 +160,56 @@ public class Utils {
         }
         return result;
     }
+
+    /**
+     * Parses the returned files from a filepicker activity into a nice list, also when they
+     * were returned as a manifest. See {@link #querySelectedFiles(Context, Intent)} to read
+     * a large selection without holding all of it.
+     *
+     * @param data returned by the {@link AbstractFilePickerActivity}
+     * @return a {@link List<Uri>} of files (uris) which the user selected in the picker.
+     */
+    @NonNull
+    public static List<Uri> getSelectedFilesFromResult(@NonNull Context context,
+                                                       @NonNull Intent data) {
+        if (!data.getBooleanExtra(EXTRA_RESULT_MANIFEST, false)) {
+            return getSelectedFilesFromResult(data);
+        }
+        final List<Uri> result = new ArrayList<>();
+        final Cursor cursor = querySelectedFiles(context, data);
+        if (cursor != null) {
+            try {
+                final int column = cursor.getColumnIndexOrThrow(COLUMN_URI);
+                while (cursor.moveToNext()) {
+                    result.add(Uri.parse(cursor.getString(column)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Streams the returned files from a filepicker activity. A manifest result is read from
+     * its provider a window at a time, other results are served from the intent. Either way
+     * the cursor has the columns {@link BaseColumns#_ID} and
+     * {@link SelectionManifestProvider#COLUMN_URI}, and must be closed.
+     *
+     * @param data returned by the {@link AbstractFilePickerActivity}
+     * @return a cursor over the selected uris, or null if the manifest is gone
+     */
+    @Nullable
+    public static Cursor querySelectedFiles(@NonNull Context context, @NonNull Intent data) {
+        if (data.getBooleanExtra(EXTRA_RESULT_MANIFEST, false)) {
+            return context.getContentResolver().query(data.getData(), null, null, null, null);
+        }
+        final List<Uri> files = getSelectedFilesFromResult(data);
+        final MatrixCursor cursor = new MatrixCursor(
+                new String[]{BaseColumns._ID, COLUMN_URI}, files.size());
+        for (int i = 0; i < files.size(); i++) {
+            cursor.addRow(new Object[]{i, String.valueOf(files.get(i))});
+        }
+        return cursor;
+    }
 }
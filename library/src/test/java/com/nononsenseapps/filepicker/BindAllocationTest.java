@@ -0,0 +1,122 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Binding rows happens for every row scrolled into view, so it must not allocate. Views are
+ * stubs which do nothing, so only the work of the adapter and the fragment is measured.
+ */
+public class BindAllocationTest {
+
+    private static final int ITEMS = 1000;
+    private static final int WARMUP_BINDS = 50000;
+    private static final int BINDS = 100000;
+    // Average bytes a bind may allocate, which leaves room for measuring but fails as soon as
+    // a single object is created per bind
+    private static final double BYTES_PER_BIND = 1.0;
+
+    private com.sun.management.ThreadMXBean threads;
+    private final FilePickerFragment fragment = new FilePickerFragment();
+    private final List<File> files = new ArrayList<>();
+    private RecyclerView.ViewHolder[] dirHolders;
+    private RecyclerView.ViewHolder[] checkableHolders;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        // Paths are compared ignoring case on Windows, which allocates
+        assumeFalse(File.separatorChar == '\\');
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        final File dir = new File("/dir");
+        for (int i = 0; i < ITEMS; i++) {
+            final boolean isDir = i % 5 == 0;
+            files.add(new FileEntry(dir, "item" + i, isDir, false, i, i));
+        }
+        dirHolders = new RecyclerView.ViewHolder[]{newDirHolder(), newDirHolder()};
+        checkableHolders = new RecyclerView.ViewHolder[]{newCheckableHolder(),
+                newCheckableHolder()};
+    }
+
+    private RecyclerView.ViewHolder newDirHolder() {
+        return fragment.new DirViewHolder(new View(null), new View(null), new TextView(null));
+    }
+
+    private RecyclerView.ViewHolder newCheckableHolder() {
+        return fragment.new CheckableViewHolder(new View(null), new View(null),
+                new TextView(null), new CheckBox(null));
+    }
+
+    private void select() {
+        for (int i = 0; i < ITEMS; i++) {
+            if (i % 5 != 0 && i % 3 == 0) {
+                fragment.mSelection.setSelected(i, true);
+            }
+        }
+    }
+
+    private void bind(FileItemAdapter<File> adapter, int binds) {
+        for (int i = 0; i < binds; i++) {
+            // Skip the header
+            final int position = 1 + i % ITEMS;
+            final RecyclerView.ViewHolder[] holders =
+                    adapter.getItemViewType(position) == LogicHandler.VIEWTYPE_CHECKABLE ?
+                            checkableHolders : dirHolders;
+            adapter.onBindViewHolder(holders[i & 1], position);
+        }
+    }
+
+    private void assertBindDoesNotAllocate(FileItemAdapter<File> adapter) {
+        bind(adapter, WARMUP_BINDS);
+        final long thread = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(thread);
+        bind(adapter, BINDS);
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(allocated + " bytes allocated by " + BINDS + " binds",
+                allocated <= BINDS * BYTES_PER_BIND);
+    }
+
+    @Test
+    public void testListBind() throws Exception {
+        FileItemAdapter<File> adapter = new FileItemAdapter<>(fragment);
+        adapter.replaceAll(files);
+        select();
+        assertBindDoesNotAllocate(adapter);
+    }
+
+    @Test
+    public void testPagedBind() throws Exception {
+        PagedFileItemAdapter<File> adapter = new PagedFileItemAdapter<>(fragment);
+        adapter.setLoadExecutor(null);
+        adapter.setPageSize(100);
+        // Every page fits, so that nothing is loaded again while measuring
+        adapter.setMaxPages(ITEMS / 100);
+        adapter.setSource(new ListPagedSource<>(files));
+        select();
+        assertBindDoesNotAllocate(adapter);
+    }
+}
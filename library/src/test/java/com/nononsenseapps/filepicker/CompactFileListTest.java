@@ -0,0 +1,146 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactFileListTest {
+
+    private final File dir = new File("/dir");
+
+    private List<File> newListing() {
+        List<File> all = new ArrayList<>();
+        all.add(new FileEntry(dir, "b.txt", false, false, 12L, 3000L));
+        all.add(new FileEntry(dir, ".hidden", false, true, 5L, 1000L));
+        all.add(new FileEntry(dir, "a", true, false, 0L, 2000L));
+        // More than one word of flags
+        for (int i = 0; i < 100; i++) {
+            all.add(new FileEntry(dir, "f" + i, i % 3 == 0, false, i, i * 10L));
+        }
+        return all;
+    }
+
+    private static List<File> visibleOf(List<File> all) {
+        List<File> visible = new ArrayList<>();
+        for (File file : all) {
+            if (!file.isHidden()) {
+                visible.add(file);
+            }
+        }
+        return visible;
+    }
+
+    private static void assertSameEntries(List<File> expected, List<File> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            File e = expected.get(i);
+            File a = actual.get(i);
+            assertEquals(e, a);
+            assertEquals(e.isDirectory(), a.isDirectory());
+            assertEquals(e.isHidden(), a.isHidden());
+            assertEquals(e.length(), a.length());
+            assertEquals(e.lastModified(), a.lastModified());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<File> all = newListing();
+        List<File> visible = visibleOf(all);
+        List<File> compact = CompactFileList.compact(all, visible);
+
+        assertTrue(compact instanceof CompactFileList);
+        assertSameEntries(visible, compact);
+        assertTrue(compact.get(0) instanceof FileEntry);
+
+        List<File> unfiltered = ((CompactFileList) compact).getUnfiltered();
+        assertEquals(all.size(), unfiltered.size());
+        assertTrue(unfiltered.containsAll(all));
+        assertTrue(((CompactFileList) compact).getRetainedBytes() > 0L);
+    }
+
+    @Test
+    public void testTypeClassIsKept() throws Exception {
+        FileEntry entry = new FileEntry(dir, "a.png", false, false, 0L, 0L);
+        entry.setTypeClass(3);
+        List<File> all = Collections.<File>singletonList(entry);
+        List<File> compact = CompactFileList.compact(all, all);
+        assertEquals(3, ((FileEntry) compact.get(0)).getTypeClass());
+    }
+
+    @Test
+    public void testMixedParentsAreNotCompacted() throws Exception {
+        List<File> all = Arrays.<File>asList(new File("/dir/a"), new File("/other/b"));
+        assertSame(all, CompactFileList.compact(all, all));
+    }
+
+    @Test
+    public void testWithChanges() throws Exception {
+        List<File> all = newListing();
+        CompactFileList compact = (CompactFileList) CompactFileList.compact(all, visibleOf(all));
+
+        File modified = new FileEntry(dir, "b.txt", false, false, 99L, 9000L);
+        File added = new FileEntry(dir, "new", true, false, 0L, 0L);
+        CompactFileList changed = compact.withChanges(Arrays.asList(modified, added),
+                Collections.<File>singletonList(new File(dir, "f7")));
+
+        assertEquals(all.size(), changed.size());
+        assertEquals(changed.size(), changed.getUnfiltered().size());
+        assertFalse(changed.contains(new File(dir, "f7")));
+        assertTrue(changed.contains(new File(dir, ".hidden")));
+        File b = changed.get(changed.indexOf(modified));
+        assertEquals(99L, b.length());
+        assertEquals(9000L, b.lastModified());
+        assertTrue(changed.get(changed.indexOf(added)).isDirectory());
+    }
+
+    @Test
+    public void testFragmentCompactsLargeListings() throws Exception {
+        FilePickerFragment picker = new FilePickerFragment();
+        picker.setCompactThreshold(10);
+        List<File> all = newListing();
+        List<File> prepared = picker.prepareListing(all);
+
+        assertTrue(prepared instanceof CompactFileList);
+        assertEquals(all.size() - 1, prepared.size());
+        // Directories first, then by name
+        assertEquals("a", prepared.get(0).getName());
+        assertEquals(all.size(), ((CompactFileList) prepared).getUnfiltered().size());
+
+        picker.setCompactThreshold(Integer.MAX_VALUE);
+        assertFalse(picker.prepareListing(all) instanceof CompactFileList);
+    }
+
+    @Test
+    public void testCachedListingStaysCompact() throws Exception {
+        FilePickerFragment picker = new FilePickerFragment();
+        picker.setCompactThreshold(10);
+        picker.mCurrentPath = dir;
+        picker.mAdapter = new PagedFileItemAdapter<>(picker);
+        CompactFileList compact = (CompactFileList) picker.prepareListing(newListing());
+
+        ListingCache cache = new ListingCache(4, Long.MAX_VALUE);
+        cache.put("/dir", 1L, compact, compact.getRetainedBytes());
+        List<File> cached = cache.get("/dir", 1L);
+        assertSame(compact, cached);
+
+        // Shown through a paged source, no entries are created up front
+        picker.showListing(cached);
+        assertSame(compact, picker.mAdapter.getShownItems());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryListerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        folder.newFolder("dir");
+        folder.newFile(".hidden");
+        FileOutputStream out = new FileOutputStream(folder.newFile("file.txt"));
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+    }
+
+    private Map<String, FileEntry> list(DirectoryLister lister, ListingStats stats) {
+        final Map<String, FileEntry> result = new HashMap<>();
+        assertTrue(lister.list(folder.getRoot(), entry -> {
+            result.put(entry.getName(), entry);
+            return true;
+        }, stats));
+        return result;
+    }
+
+    private void assertEntries(Map<String, FileEntry> entries) {
+        assertEquals(3, entries.size());
+        assertTrue(entries.get("dir").isDirectory());
+        assertFalse(entries.get("dir").isHidden());
+        assertFalse(entries.get("file.txt").isDirectory());
+        assertEquals(3L, entries.get("file.txt").length());
+        assertEquals(new File(folder.getRoot(), "file.txt").lastModified(),
+                entries.get("file.txt").lastModified());
+        assertTrue(entries.get(".hidden").isHidden());
+        assertEquals(new File(folder.getRoot(), "dir").getPath(), entries.get("dir").getPath());
+    }
+
+    @Test
+    public void testIo() throws Exception {
+        ListingStats stats = new ListingStats();
+        assertEntries(list(DirectoryLister.io(), stats));
+        assertEquals(3, stats.entries);
+        assertEquals(1, stats.directoryReads);
+        // 2 stats for the directory, 3 for each file
+        assertEquals(8, stats.attributeReads);
+    }
+
+    @Test
+    public void testNio() throws Exception {
+        ListingStats stats = new ListingStats();
+        assertEntries(list(DirectoryLister.nio(), stats));
+        assertEquals(3, stats.entries);
+        assertEquals(4, stats.getSyscalls());
+    }
+
+    @Test
+    public void testMissingDir() throws Exception {
+        File missing = new File(folder.getRoot(), "missing");
+        DirectoryLister.Visitor visitor = entry -> true;
+        assertFalse(DirectoryLister.io().list(missing, visitor, null));
+        assertFalse(DirectoryLister.nio().list(missing, visitor, null));
+    }
+
+    @Test
+    public void testInvalidPath() throws Exception {
+        // java.nio.file rejects the name with an unchecked exception, java.io can not list it
+        File invalid = new File(folder.getRoot(), "in\u0000valid");
+        DirectoryLister.Visitor visitor = entry -> true;
+        assertFalse(DirectoryLister.io().list(invalid, visitor, null));
+        assertFalse(DirectoryLister.nio().list(invalid, visitor, null));
+    }
+
+    @Test
+    public void testStopEarly() throws Exception {
+        final int[] count = {0};
+        DirectoryLister.nio().list(folder.getRoot(), entry -> ++count[0] < 2, null);
+        assertEquals(2, count[0]);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares {@link FilePaths} with the implementations it replaced, see {@link FilePathsTest}.
+ * Takes a while, so it only runs when asked for:
+ * <p/>
+ * ./gradlew :library:testDebugUnitTest --tests '*FilePathsBenchmark' -Dbenchmark=true
+ * <p/>
+ * Results on a desktop JVM only give a rough idea of the difference on a device.
+ */
+public class FilePathsBenchmark {
+
+    private static final int PATHS = 10000;
+    private static final int WARMUP_RUNS = 10;
+    private static final int RUNS = 25;
+
+    private final String[] firsts = new String[PATHS];
+    private final String[] seconds = new String[PATHS];
+    // Keeps the results alive, so that the work can not be optimised away
+    private int sink = 0;
+
+    @Test
+    public void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+
+        final Random random = new Random(1);
+        for (int i = 0; i < PATHS; i++) {
+            // Like the current directory and a typed file name in MODE_NEW_FILE
+            firsts[i] = "/storage/emulated/0/Download/dir" + random.nextInt(100) +
+                    (random.nextBoolean() ? "/" : "");
+            seconds[i] = (random.nextInt(10) == 0 ? "/" : "") + "file" + i + ".txt";
+        }
+
+        System.out.println(String.format("%-12s %14s %14s", "operation", "reference ns",
+                "FilePaths ns"));
+        System.out.println(String.format("%-12s %14.1f %14.1f", "join",
+                median(this::referenceJoin), median(this::join)));
+        System.out.println(String.format("%-12s %14.1f %14.1f", "normalize",
+                median(this::referenceNormalize), median(this::normalize)));
+        System.out.println("checksum: " + sink);
+    }
+
+    /**
+     * @return the median time per path in nanoseconds
+     */
+    private double median(Runnable run) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run.run();
+        }
+        final double[] times = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            run.run();
+            times[i] = (System.nanoTime() - start) / (double) PATHS;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private void referenceJoin() {
+        for (int i = 0; i < PATHS; i++) {
+            sink += FilePathsTest.referenceAppendPath(firsts[i], seconds[i]).length();
+        }
+    }
+
+    private void join() {
+        for (int i = 0; i < PATHS; i++) {
+            sink += FilePaths.join(firsts[i], seconds[i]).length();
+        }
+    }
+
+    private void referenceNormalize() {
+        for (int i = 0; i < PATHS; i++) {
+            sink += FilePathsTest.referenceFixSlashes(firsts[i]).length();
+        }
+    }
+
+    private void normalize() {
+        for (int i = 0; i < PATHS; i++) {
+            sink += FilePaths.normalize(firsts[i]).length();
+        }
+    }
+}
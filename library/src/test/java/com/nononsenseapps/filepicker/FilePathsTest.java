@@ -0,0 +1,139 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks {@link FilePaths} against the implementations it replaced, on random paths.
+ */
+public class FilePathsTest {
+
+    private static final char[] ALPHABET = {'/', '/', '/', 'a', 'b', '.', ' '};
+
+    /**
+     * Utils.appendPath before it used {@link FilePaths#join}.
+     */
+    static String referenceAppendPath(String first, String second) {
+        String result = first + "/" + second;
+        while (result.contains("//")) {
+            result = result.replaceAll("//", "/");
+        }
+        if (result.length() > 1 && result.endsWith("/")) {
+            return result.substring(0, result.length() - 1);
+        } else {
+            return result;
+        }
+    }
+
+    /**
+     * FtpFile.fixSlashes in the sample.
+     */
+    static String referenceFixSlashes(String origPath) {
+        boolean lastWasSlash = false;
+        char[] newPath = origPath.toCharArray();
+        int length = newPath.length;
+        int newLength = 0;
+        for (int i = 0; i < length; ++i) {
+            char ch = newPath[i];
+            if (ch == '/') {
+                if (!lastWasSlash) {
+                    newPath[newLength++] = '/';
+                    lastWasSlash = true;
+                }
+            } else {
+                newPath[newLength++] = ch;
+                lastWasSlash = false;
+            }
+        }
+        if (lastWasSlash && newLength > 1) {
+            newLength--;
+        }
+        return (newLength != length) ? new String(newPath, 0, newLength) : origPath;
+    }
+
+    /**
+     * FtpFile.getName in the sample.
+     */
+    static String referenceName(String path) {
+        int separatorIndex = path.lastIndexOf("/");
+        return (separatorIndex < 0) ? path : path.substring(separatorIndex + 1, path.length());
+    }
+
+    /**
+     * FtpFile.getParent in the sample.
+     */
+    static String referenceParent(String path) {
+        int length = path.length(), firstInPath = 0;
+        int index = path.lastIndexOf('/');
+        if (index == -1 || path.charAt(length - 1) == '/') {
+            return null;
+        }
+        if (path.indexOf('/') == index && path.charAt(firstInPath) == '/') {
+            return path.substring(0, index + 1);
+        }
+        return path.substring(0, index);
+    }
+
+    static String randomPath(Random random) {
+        final char[] chars = new char[random.nextInt(12)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+
+    @Test
+    public void testJoinMatchesAppendPath() throws Exception {
+        final Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            final String first = randomPath(random);
+            final String second = randomPath(random);
+            assertEquals("'" + first + "' + '" + second + "'",
+                    referenceAppendPath(first, second), FilePaths.join(first, second));
+        }
+    }
+
+    @Test
+    public void testNormalizeMatchesFixSlashes() throws Exception {
+        final Random random = new Random(5);
+        for (int i = 0; i < 100000; i++) {
+            final String path = randomPath(random);
+            final String normal = FilePaths.normalize(path);
+            assertEquals("'" + path + "'", referenceFixSlashes(path), normal);
+            assertEquals(normal, FilePaths.normalize(normal));
+            assertEquals(path.equals(normal), FilePaths.isNormal(path));
+        }
+    }
+
+    @Test
+    public void testNameAndParentMatchFtpFile() throws Exception {
+        final Random random = new Random(11);
+        for (int i = 0; i < 100000; i++) {
+            final String path = FilePaths.normalize(randomPath(random));
+            assertEquals("'" + path + "'", referenceName(path), FilePaths.name(path));
+            assertEquals("'" + path + "'", referenceParent(path), FilePaths.parent(path));
+        }
+    }
+
+    @Test
+    public void testCharSequences() throws Exception {
+        final String normal = "/a/b";
+        assertSame(normal, FilePaths.normalize(normal));
+        assertEquals("/a/b", FilePaths.normalize(new StringBuilder("//a//b/")));
+        assertEquals("/a/b/c", FilePaths.join(new StringBuilder("/a/"), "/b//c/"));
+        assertEquals("c", FilePaths.name(new StringBuilder("/a/b/c")));
+        assertEquals("/", FilePaths.parent(new StringBuilder("/a")));
+        assertNull(FilePaths.parent("/"));
+    }
+}
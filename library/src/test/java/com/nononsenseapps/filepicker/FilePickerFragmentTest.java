@@ -6,13 +6,21 @@
 
 package com.nononsenseapps.filepicker;
 
+import androidx.recyclerview.widget.DiffUtil;
+
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -86,4 +94,242 @@ public class FilePickerFragmentTest {
         assertEquals(-1, fragment.compareFiles(new File("/B/A"), new File("/A/B")));
         assertEquals(0, fragment.compareFiles(new File("/A/B"), new File("/B/B")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompareFileEntries() throws Exception {
+        // Entries do not exist on disk, so this only works if the captured attributes are used
+        File dir = new FileEntry(new File("/A"), "B", true, false, 0L, 0L);
+        File file = new FileEntry(new File("/A"), "A", false, false, 10L, 0L);
+        assertEquals(-1, fragment.compareFiles(dir, file));
+        assertEquals(1, fragment.compareFiles(file, dir));
+        assertTrue(fragment.isDir(dir));
+        assertEquals("B", fragment.getName(dir));
+        assertEquals("/A/B", fragment.getFullPath(dir));
+    }
+
+    @Test
+    public void testApplyChanges() throws Exception {
+        File parent = new File("/A");
+        File dir = new FileEntry(parent, "dir", true, false, 0L, 0L);
+        File b = new FileEntry(parent, "b", false, false, 1L, 0L);
+        File d = new FileEntry(parent, "d", false, false, 1L, 0L);
+        FilePickerFragment picker = new FilePickerFragment();
+        picker.mAdapter = new FileItemAdapter<>(picker);
+        picker.mFiles = Arrays.asList(dir, b, d);
+        picker.mAdapter.replaceAll(picker.mFiles);
+        picker.mSelection.setSelected(2, true);
+
+        File a = new FileEntry(parent, "a", false, false, 1L, 0L);
+        File c = new FileEntry(parent, "c", false, false, 1L, 0L);
+        File newD = new FileEntry(parent, "d", false, false, 2L, 0L);
+        picker.applyChanges(Arrays.asList(c, a, newD), Collections.singletonList(new File(parent, "b")));
+
+        assertEquals(Arrays.asList(dir, a, c, d), picker.mFiles);
+        assertEquals(5, picker.mAdapter.getItemCount());
+        assertEquals(a, picker.mAdapter.getItem(2));
+        // The selection follows the modified file
+        assertEquals(Collections.singletonList(newD), picker.getCheckedItems());
+        assertSame(newD, picker.getFirstCheckedItem());
+    }
+
+    @Test
+    public void testApplyChangesKeepsHiddenItems() throws Exception {
+        File parent = new File("/A");
+        File a = new FileEntry(parent, "a", false, false, 1L, 0L);
+        File hidden = new FileEntry(parent, ".b", false, true, 1L, 0L);
+        FilePickerFragment picker = new FilePickerFragment();
+        picker.mAdapter = new FileItemAdapter<>(picker);
+        List<File> listing = picker.prepareListing(Arrays.asList(hidden, a));
+        assertEquals(Collections.singletonList(a), listing);
+        picker.mFiles = listing;
+        picker.mRawFiles = Arrays.asList(hidden, a);
+        picker.mAdapter.replaceAll(picker.mFiles);
+
+        // Hidden items are not shown, but are kept for when they are shown later
+        File hiddenC = new FileEntry(parent, ".c", false, true, 1L, 0L);
+        picker.applyChanges(Collections.singletonList(hiddenC),
+                Collections.singletonList(new File(parent, ".b")));
+        assertEquals(Collections.singletonList(a), picker.mFiles);
+        assertEquals(Arrays.asList(a, hiddenC), picker.mRawFiles);
+
+        picker.showHiddenItems = true;
+        assertEquals(Arrays.asList(hiddenC, a), picker.prepareListing(picker.mRawFiles));
+    }
+
+    @Test
+    public void testCachedListingRefiltersWithoutReload() throws Exception {
+        File parent = new File("/A");
+        File a = new FileEntry(parent, "a", false, false, 1L, 0L);
+        File hidden = new FileEntry(parent, ".b", false, true, 1L, 0L);
+        final List<File> reloaded = new ArrayList<>();
+        FilePickerFragment picker = new FilePickerFragment() {
+            @Override
+            protected void refresh(File nextPath) {
+                reloaded.add(nextPath);
+            }
+        };
+        picker.mCurrentPath = parent;
+        picker.mAdapter = new FileItemAdapter<>(picker);
+        // Filter and apply the differences right away
+        picker.setFilterExecutor(null);
+        picker.mAdapter.setDiffExecutor(null);
+
+        ListingCache cache = new ListingCache(4, 1000L);
+        cache.put("/A", 1L, picker.prepareListing(Arrays.asList(hidden, a)), 10L);
+        picker.showListing(cache.<File>get("/A", 1L));
+        assertEquals(Collections.singletonList(a), picker.mFiles);
+
+        // The cached listing still knows the hidden item, so the directory is not listed again
+        picker.showHiddenItems = true;
+        picker.refilter();
+        assertTrue(reloaded.isEmpty());
+        assertEquals(Arrays.asList(hidden, a), picker.mFiles);
+    }
+
+    @Test
+    public void testListingUpdateKeepsSelection() throws Exception {
+        File parent = new File("/A");
+        File a = new FileEntry(parent, "a", false, false, 1L, 0L);
+        File b = new FileEntry(parent, "b", false, false, 1L, 0L);
+        FilePickerFragment picker = new FilePickerFragment();
+        picker.mCurrentPath = parent;
+        picker.mAdapter = new FileItemAdapter<>(picker);
+        // Apply the diff right away
+        picker.mAdapter.setDiffExecutor(null);
+        picker.mFiles = Arrays.asList(a, b);
+        picker.mAdapter.replaceAll(picker.mFiles);
+        picker.mSelection.selectAll();
+
+        // a is unchanged, b is gone and c is new
+        File sameA = new FileEntry(parent, "a", false, false, 1L, 0L);
+        File c = new FileEntry(parent, "c", false, false, 1L, 0L);
+        picker.onListingUpdated(Arrays.asList(sameA, c));
+
+        assertEquals(2, picker.mFiles.size());
+        // Unchanged items keep their instance
+        assertSame(a, picker.mFiles.get(0));
+        assertSame(c, picker.mFiles.get(1));
+        assertEquals(Collections.singletonList(a), picker.getCheckedItems());
+    }
+
+    @Test
+    public void testReplaceAllDuringDiff() throws Exception {
+        File parent = new File("/A");
+        File a = new FileEntry(parent, "a", false, false, 1L, 0L);
+        File b = new FileEntry(parent, "b", false, false, 1L, 0L);
+        File c = new FileEntry(parent, "c", false, false, 1L, 0L);
+        File x = new FileEntry(parent, "x", false, false, 1L, 0L);
+        FilePickerFragment picker = new FilePickerFragment();
+        FileItemAdapter<File> adapter = new FileItemAdapter<>(picker);
+        final List<Runnable> held = new ArrayList<>();
+        adapter.setDiffExecutor(held::add);
+        adapter.replaceAll(Arrays.asList(a, b));
+
+        final List<File> compared = new ArrayList<>();
+        adapter.submitList(Arrays.asList(a, c), new DiffUtil.ItemCallback<File>() {
+            @Override
+            public boolean areItemsTheSame(File oldItem, File newItem) {
+                compared.add(oldItem);
+                return oldItem.equals(newItem);
+            }
+
+            @Override
+            public boolean areContentsTheSame(File oldItem, File newItem) {
+                return true;
+            }
+        });
+        // Navigating elsewhere before the diff has run
+        adapter.replaceAll(Collections.singletonList(x));
+        adapter.insertItem(1, c);
+        assertEquals(1, held.size());
+        held.get(0).run();
+
+        // The diff saw the list it was given, and its result is dropped
+        assertTrue(compared.size() > 0);
+        for (File item : compared) {
+            assertTrue(item == a || item == b);
+        }
+        assertEquals(3, adapter.getItemCount());
+        assertSame(x, adapter.getItem(1));
+        assertSame(c, adapter.getItem(2));
+    }
+
+    @Test
+    public void testSelectAcrossDirectories() throws Exception {
+        File dirA = new File("/A");
+        File dirB = new File("/B");
+        File a = new FileEntry(dirA, "a", false, false, 1L, 0L);
+        File b = new FileEntry(dirA, "b", false, false, 1L, 0L);
+        File c = new FileEntry(dirB, "c", false, false, 1L, 0L);
+        FilePickerFragment picker = new FilePickerFragment();
+        picker.allowMultiple = true;
+        picker.setSelectAcrossDirectories(true);
+        picker.mAdapter = new FileItemAdapter<>(picker);
+
+        picker.mCurrentPath = dirA;
+        picker.onListingLoaded(Arrays.asList(a, b));
+        picker.mSelection.setSelected(1, true);
+        picker.mCurrentPath = dirB;
+        picker.onListingLoaded(Collections.singletonList(c));
+        picker.mSelection.setSelected(0, true);
+        assertEquals(Arrays.asList("/A/b", "/B/c"), sortedBasket(picker));
+
+        // Going back shows what was selected, and deselecting is kept as well
+        picker.mCurrentPath = dirA;
+        picker.onListingLoaded(Arrays.asList(a, b));
+        assertEquals(Collections.singletonList(b), picker.getCheckedItems());
+        picker.mSelection.setSelected(1, false);
+        assertEquals(Collections.singletonList("/B/c"), sortedBasket(picker));
+
+        picker.mSelection.setSelected(0, true);
+        picker.onBasketPruned(Arrays.asList("/A/a", "/B/c"));
+        assertTrue(picker.mSelection.isEmpty());
+        assertTrue(picker.getBasketPaths().isEmpty());
+    }
+
+    private static List<String> sortedBasket(FilePickerFragment picker) {
+        List<String> paths = new ArrayList<>(picker.getBasketPaths());
+        Collections.sort(paths);
+        return paths;
+    }
+
+    @Test
+    public void testStableIds() throws Exception {
+        FileItemAdapter<File> adapter = new FileItemAdapter<>(fragment);
+        adapter.replaceAll(Arrays.asList(new File("/A/a"), new File("/A/b")));
+        assertEquals(FileItemAdapter.HEADER_ID, adapter.getItemId(0));
+        assertEquals(FileItemAdapter.getPathId("/A/a"), adapter.getItemId(1));
+        assertNotEquals(adapter.getItemId(1), adapter.getItemId(2));
+        // FNV-1a of the empty string is the offset basis
+        assertEquals(0xcbf29ce484222325L, FileItemAdapter.getPathId(""));
+    }
+
+    @Test
+    public void testSortModes() throws Exception {
+        FilePickerFragment picker = new FilePickerFragment();
+        File parent = new File("/A");
+        File dir = new FileEntry(parent, "z", true, false, 0L, 0L);
+        File small = new FileEntry(parent, "b.txt", false, false, 1L, 300L);
+        File large = new FileEntry(parent, "a.png", false, false, 3L, 100L);
+        File medium = new FileEntry(parent, "c.jpg", false, false, 2L, 200L);
+        List<File> files = new ArrayList<>(Arrays.asList(medium, small, dir, large));
+
+        picker.sortFiles(files);
+        assertEquals(Arrays.asList(dir, large, small, medium), files);
+
+        picker.setSortMode(FilePickerFragment.SORT_SIZE);
+        picker.sortFiles(files);
+        assertEquals(Arrays.asList(dir, small, medium, large), files);
+
+        picker.setSortMode(FilePickerFragment.SORT_MODIFIED);
+        picker.sortFiles(files);
+        assertEquals(Arrays.asList(dir, small, medium, large), files);
+        assertEquals(1, picker.compareFiles(large, small));
+
+        picker.setSortMode(FilePickerFragment.SORT_TYPE);
+        picker.sortFiles(files);
+        assertEquals(Arrays.asList(dir, medium, large, small), files);
+        assertEquals("jpg", picker.getType(medium));
+        assertEquals("", picker.getType(new File("/A/.hidden")));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ListingCacheTest {
+
+    private final List<String> listing = Arrays.asList("A", "B");
+
+    @Test
+    public void testStamp() throws Exception {
+        ListingCache cache = new ListingCache(4, 1000L);
+        cache.put("/a", 1L, listing, 10L);
+        assertEquals(listing, cache.<String>get("/a", 1L));
+        assertNull(cache.get("/a", 2L));
+        assertNull(cache.get("/b", 1L));
+    }
+
+    @Test
+    public void testNoStamp() throws Exception {
+        ListingCache cache = new ListingCache(4, 1000L);
+        cache.put("/a", ListingCache.NO_STAMP, listing, 10L);
+        assertNull(cache.get("/a", ListingCache.NO_STAMP));
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        ListingCache cache = new ListingCache(4, 1000L);
+        cache.put("/a", ListingCache.NO_STAMP, listing, 10L);
+        cache.put("/b", 1L, listing, 10L);
+        assertEquals(listing, cache.getStale("/a"));
+        assertEquals(listing, cache.getStale("/b"));
+        assertNull(cache.getStale("/c"));
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        ListingCache cache = new ListingCache(4, 1000L);
+        List<String> items = new ArrayList<>(listing);
+        cache.put("/a", 1L, items, 10L);
+        items.clear();
+        assertEquals(2, cache.get("/a", 1L).size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() throws Exception {
+        ListingCache cache = new ListingCache(4, 1000L);
+        cache.put("/a", 1L, new ArrayList<>(listing), 10L);
+        cache.get("/a", 1L).clear();
+    }
+
+    @Test
+    public void testEvictByCount() throws Exception {
+        ListingCache cache = new ListingCache(2, 1000L);
+        cache.put("/a", 1L, listing, 10L);
+        cache.put("/b", 1L, listing, 10L);
+        // Touch a, so b is the least recently used
+        assertNotNull(cache.get("/a", 1L));
+        cache.put("/c", 1L, listing, 10L);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("/a", 1L));
+        assertNull(cache.get("/b", 1L));
+        assertNotNull(cache.get("/c", 1L));
+    }
+
+    @Test
+    public void testEvictByBytes() throws Exception {
+        ListingCache cache = new ListingCache(10, 100L);
+        cache.put("/a", 1L, listing, 40L);
+        cache.put("/b", 1L, listing, 40L);
+        cache.put("/c", 1L, listing, 40L);
+        assertEquals(2, cache.size());
+        assertEquals(80L, cache.getBytes());
+        assertNull(cache.get("/a", 1L));
+
+        // Too big to ever fit
+        cache.put("/d", 1L, listing, 200L);
+        assertNull(cache.get("/d", 1L));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        ListingCache cache = new ListingCache(10, 100L);
+        cache.put("/a", 1L, listing, 40L);
+        cache.put("/a", 2L, listing, 30L);
+        assertEquals(1, cache.size());
+        assertEquals(30L, cache.getBytes());
+        cache.setLimits(0, 100L);
+        assertEquals(0, cache.size());
+        assertEquals(0L, cache.getBytes());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoadEngineTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // Results in the order they were delivered
+    private final LinkedBlockingQueue<Object> results = new LinkedBlockingQueue<>();
+    private final LoadEngine<String> engine = new LoadEngine<>(executor, Runnable::run);
+    private final LoadEngine.Callback<String> callback = new LoadEngine.Callback<String>() {
+        @Override
+        public void onLoadFinished(int generation, @NonNull List<String> data) {
+            results.add(data);
+        }
+
+        @Override
+        public void onLoadFailed(int generation, @NonNull Exception error) {
+            results.add(error);
+        }
+    };
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testResult() throws Exception {
+        engine.submit(1, signal -> Arrays.asList("a", "b"), 0L, callback);
+        assertEquals(Arrays.asList("a", "b"), results.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testError() throws Exception {
+        engine.submit(1, signal -> {
+            throw new IOException("unreadable");
+        }, 0L, callback);
+        assertTrue(results.poll(5, TimeUnit.SECONDS) instanceof IOException);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        LoadEngine<String>.Request request = engine.submit(1, signal -> {
+            started.countDown();
+            while (!signal.isCanceled()) {
+                Thread.sleep(1);
+            }
+            stopped.countDown();
+            return Arrays.asList("partial");
+        }, 0L, callback);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        request.cancel();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        // Nothing is delivered for a cancelled load
+        assertNull(results.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        engine.submit(1, signal -> {
+            while (!signal.isCanceled()) {
+                Thread.sleep(1);
+            }
+            stopped.countDown();
+            return Arrays.asList("late");
+        }, 50L, callback);
+        assertTrue(results.poll(5, TimeUnit.SECONDS) instanceof TimeoutException);
+        // The task is told to stop, and its late result is not delivered
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertNull(results.poll(100, TimeUnit.MILLISECONDS));
+    }
+}
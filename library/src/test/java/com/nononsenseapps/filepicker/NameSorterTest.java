@@ -0,0 +1,117 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class NameSorterTest {
+
+    private final FilePickerFragment fragment = new FilePickerFragment();
+
+    private List<String> sortNames(NameSorter sorter, String... names) {
+        List<File> files = new ArrayList<>();
+        for (String name : names) {
+            files.add(new File("/dir", name));
+        }
+        sorter.sort(files, fragment);
+        List<String> sorted = new ArrayList<>();
+        for (File file : files) {
+            sorted.add(file.getName());
+        }
+        return sorted;
+    }
+
+    @Test
+    public void testDefaultIgnoresCase() throws Exception {
+        assertEquals(Arrays.asList("a", "B", "b", "c", "file10", "file2"),
+                sortNames(new NameSorter(), "file2", "c", "b", "file10", "B", "a"));
+    }
+
+    @Test
+    public void testNatural() throws Exception {
+        assertEquals(Arrays.asList("file1", "File2", "file02", "file10", "file10b", "img"),
+                sortNames(new NameSorter(null, true),
+                        "img", "file10b", "file10", "file02", "File2", "file1"));
+    }
+
+    @Test
+    public void testNaturalLongRuns() throws Exception {
+        // Longer than a long, and than any fixed padding
+        final String nines = "f999999999999999999999999";
+        final String power = "f1000000000000000000000000";
+        // Equal values are ordered by their names, so the leading zero comes first
+        final List<String> expected = Arrays.asList("f2", nines, "f0" + power.substring(1), power);
+        assertEquals(expected, sortNames(new NameSorter(null, true),
+                "f0" + power.substring(1), power, nines, "f2"));
+        assertEquals(expected, sortNames(
+                new NameSorter(Collator.getInstance(Locale.ENGLISH), true),
+                "f0" + power.substring(1), power, nines, "f2"));
+    }
+
+    @Test
+    public void testCollator() throws Exception {
+        // Ignoring case alone would place the umlaut after all plain letters
+        Collator collator = Collator.getInstance(Locale.ENGLISH);
+        assertEquals(Arrays.asList("\u00c4pfel", "apple", "banana"),
+                sortNames(new NameSorter(collator, false), "banana", "\u00c4pfel", "apple"));
+    }
+
+    @Test
+    public void testSortAgreesWithCompare() throws Exception {
+        final Random random = new Random(42);
+        final String alphabet = "aAbB0129_.\u00e4";
+        final NameSorter[] sorters = {new NameSorter(), new NameSorter(null, true),
+                new NameSorter(Collator.getInstance(Locale.ENGLISH), true)};
+        for (NameSorter sorter : sorters) {
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                StringBuilder name = new StringBuilder();
+                for (int j = random.nextInt(6) + 1; j > 0; j--) {
+                    name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                files.add(new FileEntry(new File("/dir"), name.toString(),
+                        random.nextBoolean(), false, 0L, 0L));
+            }
+            List<File> expected = new ArrayList<>(files);
+            Collections.sort(expected, (lhs, rhs) -> sorter.compare(lhs.isDirectory(),
+                    lhs.getName(), rhs.isDirectory(), rhs.getName()));
+            sorter.sort(files, fragment);
+            assertEquals(expected, files);
+        }
+    }
+
+    @Test
+    public void testParallelSort() throws Exception {
+        final Random random = new Random(7);
+        final NameSorter sorter = new NameSorter(Collator.getInstance(Locale.ENGLISH), true);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String name = (random.nextInt(4) == 0 ? "." : "") + "f" + random.nextInt(100000);
+            files.add(new FileEntry(new File("/dir"), name, random.nextBoolean(),
+                    DirectoryLister.isHiddenName(name), 0L, 0L));
+        }
+        ParallelListing.Filter<File> visible = file -> !file.isHidden();
+        List<File> expected = ParallelListing.filter(files, visible);
+        List<File> actual = ParallelListing.parallelFilter(files, visible);
+        assertEquals(expected, actual);
+
+        sorter.sort(expected, fragment);
+        sorter.parallelSort(actual, fragment);
+        assertEquals(expected, actual);
+    }
+}
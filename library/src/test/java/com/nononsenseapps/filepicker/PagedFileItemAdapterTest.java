@@ -0,0 +1,216 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PagedFileItemAdapterTest {
+
+    private static final File DIR = new File("/dir");
+
+    /**
+     * A huge directory which creates its entries when they are read.
+     */
+    private static List<File> hugeListing(final int size) {
+        return new AbstractList<File>() {
+            @Override
+            public File get(int index) {
+                return new FileEntry(DIR, name(index), false, false, 0L, 0L);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static String name(int index) {
+        return String.format("f%07d", index);
+    }
+
+    private PagedFileItemAdapter<File> newAdapter() {
+        PagedFileItemAdapter<File> adapter = new PagedFileItemAdapter<>(new FilePickerFragment());
+        adapter.setLoadExecutor(null);
+        adapter.setPageSize(100);
+        adapter.setMaxPages(4);
+        return adapter;
+    }
+
+    @Test
+    public void testScrollKeepsFewPages() throws Exception {
+        PagedFileItemAdapter<File> adapter = newAdapter();
+        adapter.setSource(new ListPagedSource<>(hugeListing(1000000)));
+        assertEquals(1000001, adapter.getItemCount());
+        assertNull(adapter.getItem(0));
+
+        for (int position = 1; position < adapter.getItemCount(); position += 7) {
+            File file = adapter.getItem(position);
+            assertEquals(name(position - 1), file.getName());
+            assertTrue(adapter.getLoadedPageCount() <= 4);
+        }
+        // And back up again
+        assertEquals(name(5), adapter.getItem(6).getName());
+        assertEquals(FileItemAdapter.getPathId(new File(DIR, name(5)).getPath()),
+                adapter.getItemId(6));
+        assertTrue(adapter.getLoadedPageCount() <= 4);
+    }
+
+    @Test
+    public void testSelectAllOnListSource() throws Exception {
+        PagedFileItemAdapter<File> adapter = newAdapter();
+        // Ten pages, more than the four kept in memory
+        adapter.setSource(new ListPagedSource<>(hugeListing(1000)));
+        adapter.mSelection.selectAll();
+
+        List<File> selected = adapter.getSelectedItems();
+        assertEquals(1000, selected.size());
+        assertEquals(name(999), selected.get(999).getName());
+
+        // Selected pages are not pinned, so scrolling keeps memory flat
+        for (int position = 1; position < adapter.getItemCount(); position += 7) {
+            adapter.getItem(position);
+            assertTrue(adapter.getLoadedPageCount() <= 4);
+        }
+        assertEquals(1000, adapter.getSelectedItems().size());
+    }
+
+    @Test
+    public void testPlaceholderIdsAreStable() throws Exception {
+        // Pages are never loaded, so every row is a placeholder
+        PagedFileItemAdapter<File> waiting = newAdapter();
+        waiting.setLoadExecutor(new ArrayList<Runnable>()::add);
+        PagedFileItemAdapter<File> loaded = newAdapter();
+
+        waiting.setSource(new ListPagedSource<>(hugeListing(1000)));
+        loaded.setSource(new ListPagedSource<>(hugeListing(1000)));
+        assertNull(waiting.getItem(501));
+        assertEquals(name(500), loaded.getItem(501).getName());
+        assertEquals(FileItemAdapter.getPathId(new File(DIR, name(500)).getPath()),
+                waiting.getItemId(501));
+        assertEquals(loaded.getItemId(501), waiting.getItemId(501));
+
+        loaded.setSource(new BatchSource(1000, 1000));
+        waiting.setSource(new BatchSource(1000, 1000));
+        assertNull(waiting.getItem(501));
+        assertEquals(name(500), loaded.getItem(501).getName());
+        assertEquals(loaded.getItemId(501), waiting.getItemId(501));
+        assertNotEquals(loaded.getItemId(501), loaded.getItemId(502));
+    }
+
+    @Test
+    public void testListAfterSource() throws Exception {
+        PagedFileItemAdapter<File> adapter = newAdapter();
+        adapter.setSource(new ListPagedSource<>(hugeListing(1000)));
+        List<File> list = Arrays.asList(new File(DIR, "a"), new File(DIR, "b"));
+        adapter.replaceAll(list);
+
+        assertNull(adapter.getSource());
+        assertEquals(3, adapter.getItemCount());
+        assertEquals("b", adapter.getItem(2).getName());
+        assertEquals(0, adapter.getLoadedPageCount());
+    }
+
+    @Test
+    public void testSourceGrows() throws Exception {
+        PagedFileItemAdapter<File> adapter = newAdapter();
+        BatchSource source = new BatchSource(1050, 150);
+        adapter.setSource(source);
+        // The first page is asked for right away, which fetches the first batch
+        assertEquals(1 + 150, adapter.getItemCount());
+        assertEquals(name(120), adapter.getItem(121).getName());
+    }
+
+    @Test
+    public void testCursorSourceRefetchesFromBatch() throws Exception {
+        BatchSource source = new BatchSource(1050, 100);
+        assertEquals(0, source.size());
+        assertTrue(source.hasMore());
+
+        List<File> page = source.loadPage(250, 50);
+        assertEquals(name(250), page.get(0).getName());
+        assertEquals(name(299), page.get(49).getName());
+        assertEquals(3, source.fetches.size());
+        assertEquals(300, source.size());
+
+        // Only the batch containing the page is fetched again
+        source.fetches.clear();
+        page = source.loadPage(120, 10);
+        assertEquals(name(120), page.get(0).getName());
+        assertEquals(Arrays.asList(100), source.fetches);
+
+        page = source.loadPage(1000, 100);
+        assertEquals(50, page.size());
+        assertEquals(name(1049), page.get(49).getName());
+        assertEquals(1050, source.size());
+        assertFalse(source.hasMore());
+
+        source.fetches.clear();
+        assertTrue(source.loadPage(2000, 10).isEmpty());
+        assertTrue(source.fetches.isEmpty());
+    }
+
+    @Test
+    public void testCursorSourceSkipsEmptyBatches() throws Exception {
+        BatchSource source = new BatchSource(300, 100);
+        source.emptyAt = 100;
+        List<File> page = source.loadPage(90, 20);
+        assertEquals(20, page.size());
+        assertEquals(name(109), page.get(19).getName());
+        page = source.loadPage(100, 1);
+        assertEquals(name(100), page.get(0).getName());
+    }
+
+    /**
+     * Returns batches of names with the position of the next batch as cursor, and remembers
+     * which positions were fetched.
+     */
+    private static class BatchSource extends CursorPagedSource<File, Integer> {
+        final List<Integer> fetches = new ArrayList<>();
+        final int total;
+        final int batchSize;
+        // Position at which one empty batch is returned first
+        int emptyAt = -1;
+
+        BatchSource(int total, int batchSize) {
+            this.total = total;
+            this.batchSize = batchSize;
+        }
+
+        @NonNull
+        @Override
+        protected Batch<File, Integer> fetch(@Nullable Integer cursor) {
+            final int start = cursor == null ? 0 : Math.abs(cursor);
+            fetches.add(start);
+            final List<File> items = new ArrayList<>();
+            if (start == emptyAt && (cursor == null || cursor >= 0)) {
+                // Negative cursor marks the batch after the empty one
+                return new Batch<>(items, -start, true);
+            }
+            final int end = Math.min(total, start + batchSize);
+            for (int i = start; i < end; i++) {
+                items.add(new FileEntry(DIR, name(i), false, false, 0L, 0L));
+            }
+            return new Batch<>(items, end, end < total);
+        }
+    }
+}
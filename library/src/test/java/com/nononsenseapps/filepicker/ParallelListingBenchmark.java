@@ -0,0 +1,95 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares filtering and sorting a listing on one core with doing it on all cores, to find
+ * the size from which {@link AbstractFilePickerFragment#setParallelThreshold(int)} should
+ * switch over. Takes a while, so it only runs when asked for:
+ * <p/>
+ * ./gradlew :library:testDebugUnitTest --tests '*ParallelListingBenchmark' -Dbenchmark=true
+ * <p/>
+ * Results on a desktop JVM only give a rough idea, measure on a device to tune the threshold.
+ */
+public class ParallelListingBenchmark {
+
+    private static final int[] SIZES = {1000, 2000, 5000, 10000, 20000, 50000, 100000, 200000};
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 15;
+
+    private final FilePickerFragment fragment = new FilePickerFragment();
+    private final NameSorter sorter = new NameSorter(null, true);
+    private final ParallelListing.Filter<File> filter = item -> !item.isHidden();
+
+    @Test
+    public void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("%10s %14s %14s", "items", "sequential ms",
+                "parallel ms"));
+        int crossover = -1;
+        for (int size : SIZES) {
+            final List<File> listing = newListing(size);
+            final double sequential = median(listing, false);
+            final double parallel = median(listing, true);
+            System.out.println(String.format("%10d %14.3f %14.3f", size, sequential, parallel));
+            // The smallest size from which parallel stays faster
+            if (parallel >= sequential) {
+                crossover = -1;
+            } else if (crossover < 0) {
+                crossover = size;
+            }
+        }
+        System.out.println(crossover < 0 ? "parallel never faster" : "crossover: " + crossover);
+    }
+
+    private double median(List<File> listing, boolean parallel) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(listing, parallel);
+        }
+        final double[] times = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            run(listing, parallel);
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private void run(List<File> listing, boolean parallel) {
+        if (parallel) {
+            sorter.parallelSort(ParallelListing.parallelFilter(listing, filter), fragment);
+        } else {
+            sorter.sort(ParallelListing.filter(listing, filter), fragment);
+        }
+    }
+
+    private static List<File> newListing(int size) {
+        final Random random = new Random(size);
+        final File dir = new File("/dir");
+        final List<File> listing = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final String name = (random.nextInt(10) == 0 ? "." : "") + "IMG_" +
+                    random.nextInt(size * 10) + (random.nextBoolean() ? ".jpg" : ".Mp4");
+            listing.add(new FileEntry(dir, name, random.nextInt(20) == 0,
+                    DirectoryLister.isHiddenName(name), 0L, 0L));
+        }
+        return listing;
+    }
+}
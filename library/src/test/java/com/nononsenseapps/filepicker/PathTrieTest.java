@@ -0,0 +1,76 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathTrieTest {
+
+    private static List<String> sorted(List<String> paths) {
+        final ArrayList<String> copy = new ArrayList<>(paths);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    @Test
+    public void testPathsAreKeptExactly() throws Exception {
+        PathTrie trie = new PathTrie();
+        List<String> paths = Arrays.asList("/", "", "/a", "/a/", "a", "/a/b/c", "//x");
+        for (String path : paths) {
+            assertTrue(path, trie.add(path));
+        }
+        assertFalse(trie.add("/a"));
+        assertEquals(paths.size(), trie.size());
+        assertEquals(sorted(paths), sorted(trie.getPaths()));
+        assertFalse(trie.contains("/a/b"));
+        assertTrue(trie.contains("/a/b/c"));
+    }
+
+    @Test
+    public void testDirectoriesComeFirst() throws Exception {
+        PathTrie trie = new PathTrie();
+        trie.add("/a/b/c");
+        trie.add("/a/b");
+        trie.add("/d");
+        List<String> paths = trie.getPaths();
+        assertTrue(paths.indexOf("/a/b") < paths.indexOf("/a/b/c"));
+    }
+
+    @Test
+    public void testRemoveMatchesHashSet() throws Exception {
+        final Random random = new Random(7);
+        final PathTrie trie = new PathTrie();
+        final HashSet<String> expected = new HashSet<>();
+        for (int step = 0; step < 20000; step++) {
+            final String path = "/sd/" + random.nextInt(10) + "/" + random.nextInt(30) +
+                    (random.nextBoolean() ? "" : "/f" + random.nextInt(20));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(path), trie.remove(path));
+            } else {
+                assertEquals(expected.add(path), trie.add(path));
+            }
+            assertEquals(expected.size(), trie.size());
+        }
+        assertEquals(sorted(new ArrayList<>(expected)), sorted(trie.getPaths()));
+        for (String path : expected) {
+            assertTrue(trie.remove(path));
+        }
+        assertTrue(trie.isEmpty());
+        assertTrue(trie.getPaths().isEmpty());
+    }
+}
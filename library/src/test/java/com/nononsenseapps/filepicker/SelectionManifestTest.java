@@ -0,0 +1,78 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SelectionManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEntriesAreReadInAnyOrder() throws Exception {
+        final List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            entries.add("content://app.provider/root/sdcard/f%20" + i);
+        }
+        final File file = new File(folder.getRoot(), "manifest");
+        SelectionManifest.write(file, entries);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        SelectionManifest manifest = new SelectionManifest(file);
+        try {
+            assertEquals(entries.size(), manifest.getCount());
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(entries.get(i), manifest.get(i));
+            }
+            assertEquals(entries.get(5), manifest.get(5));
+            assertEquals(entries.get(5), manifest.get(5));
+            assertEquals(entries.get(9999), manifest.get(9999));
+            assertNull(manifest.get(-1));
+            assertNull(manifest.get(10000));
+        } finally {
+            manifest.close();
+        }
+    }
+
+    @Test
+    public void testEmptySelection() throws Exception {
+        final File file = new File(folder.getRoot(), "empty");
+        SelectionManifest.write(file, Collections.<String>emptyList());
+        SelectionManifest manifest = new SelectionManifest(file);
+        assertEquals(0, manifest.getCount());
+        assertNull(manifest.get(0));
+        manifest.close();
+    }
+
+    @Test
+    public void testOtherFilesAreRejected() throws Exception {
+        final File file = folder.newFile("other");
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write("not a count\n".getBytes("UTF-8"));
+        out.close();
+        try {
+            new SelectionManifest(file);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SelectionModelTest {
+
+    private static void assertSame(BitSet expected, int size, SelectionModel selection) {
+        assertEquals(size, selection.size());
+        assertEquals(expected.cardinality(), selection.getSelectedCount());
+        for (int i = 0; i < size + 70; i++) {
+            assertEquals("position " + i, expected.get(i), selection.isSelected(i));
+            final int next = expected.nextSetBit(i);
+            assertEquals(next < 0 || next >= size ? -1 : next, selection.nextSelected(i));
+        }
+    }
+
+    @Test
+    public void testRangesAcrossWords() throws Exception {
+        SelectionModel selection = new SelectionModel();
+        selection.reset(200);
+        selection.setRange(60, 130, true);
+        assertEquals(70, selection.getSelectedCount());
+        selection.setRange(64, 128, false);
+        assertEquals(6, selection.getSelectedCount());
+        assertTrue(selection.isSelected(63));
+        assertFalse(selection.isSelected(64));
+        assertTrue(selection.isSelected(128));
+
+        selection.selectAll();
+        assertEquals(200, selection.getSelectedCount());
+        assertEquals(-1, selection.nextSelected(200));
+        selection.clear();
+        assertTrue(selection.isEmpty());
+    }
+
+    @Test
+    public void testMasks() throws Exception {
+        SelectionModel selection = new SelectionModel();
+        SelectionModel mask = new SelectionModel();
+        selection.reset(130);
+        mask.reset(130);
+        mask.setRange(0, 130, true);
+        mask.setSelected(5, false);
+
+        selection.setSelected(1, true);
+        selection.invert(mask);
+        assertEquals(128, selection.getSelectedCount());
+        assertFalse(selection.isSelected(1));
+        assertFalse(selection.isSelected(5));
+
+        mask.reset(130);
+        mask.setSelected(129, true);
+        selection.retain(mask);
+        assertEquals(1, selection.getSelectedCount());
+        assertEquals(129, selection.nextSelected(0));
+    }
+
+    @Test
+    public void testShiftsMatchBitSet() throws Exception {
+        final Random random = new Random(42);
+        final SelectionModel selection = new SelectionModel();
+        BitSet expected = new BitSet();
+        int size = 0;
+        selection.reset(size);
+        for (int step = 0; step < 2000; step++) {
+            final int op = random.nextInt(5);
+            if (op == 0 || size == 0) {
+                final int position = random.nextInt(size + 1);
+                final int count = 1 + random.nextInt(100);
+                selection.insert(position, count);
+                final BitSet shifted = expected.get(0, position);
+                final BitSet tail = expected.get(position, size);
+                for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+                    shifted.set(position + count + i);
+                }
+                expected = shifted;
+                size += count;
+            } else if (op == 1) {
+                final int position = random.nextInt(size);
+                final int count = random.nextInt(Math.min(size - position, 100) + 1);
+                selection.remove(position, count);
+                final BitSet shifted = expected.get(0, position);
+                final BitSet tail = expected.get(position + count, size);
+                for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+                    shifted.set(position + i);
+                }
+                expected = shifted;
+                size -= count;
+            } else if (op == 2) {
+                final int from = random.nextInt(size);
+                final int to = random.nextInt(size);
+                final boolean selected = expected.get(from);
+                selection.move(from, to);
+                // Same as removing and inserting again
+                final BitSet shifted = expected.get(0, from);
+                final BitSet tail = expected.get(from + 1, size);
+                for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+                    shifted.set(from + i);
+                }
+                final BitSet moved = shifted.get(0, to);
+                final BitSet rest = shifted.get(to, size - 1);
+                for (int i = rest.nextSetBit(0); i >= 0; i = rest.nextSetBit(i + 1)) {
+                    moved.set(to + 1 + i);
+                }
+                moved.set(to, selected);
+                expected = moved;
+            } else if (op == 3) {
+                final int from = random.nextInt(size);
+                final int to = from + random.nextInt(size - from + 1);
+                final boolean selected = random.nextBoolean();
+                selection.setRange(from, to, selected);
+                expected.set(from, to, selected);
+            } else {
+                final int position = random.nextInt(size);
+                assertEquals(!expected.get(position), selection.toggle(position));
+                expected.flip(position);
+            }
+            if (step % 100 == 0) {
+                assertSame(expected, size, selection);
+            }
+        }
+        assertSame(expected, size, selection);
+
+        selection.resize(size / 2);
+        expected.clear(size / 2, size);
+        assertSame(expected, size / 2, selection);
+        selection.resize(size);
+        assertSame(expected, size, selection);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SelectionPayloadTest {
+
+    private final FilePickerFragment fragment = new FilePickerFragment();
+    private final List<File> files = new ArrayList<>();
+    private final List<Object> selectionPayload =
+            Collections.singletonList(FileItemAdapter.PAYLOAD_SELECTION);
+    private FileItemAdapter<File> adapter;
+    private CountingView icon;
+    private RecordingCheckBox checkbox;
+    private AbstractFilePickerFragment<File>.CheckableViewHolder holder;
+
+    @Before
+    public void setUp() throws Exception {
+        fragment.allowMultiple = true;
+        final File dir = new File("/dir");
+        for (int i = 0; i < 10; i++) {
+            files.add(new FileEntry(dir, "file" + i, false, false, 0L, 0L));
+        }
+        adapter = new FileItemAdapter<>(fragment);
+        adapter.replaceAll(files);
+        fragment.mAdapter = adapter;
+        fragment.mFiles = files;
+
+        icon = new CountingView();
+        checkbox = new RecordingCheckBox();
+        holder = fragment.new CheckableViewHolder(new View(null), icon, new TextView(null),
+                checkbox);
+    }
+
+    @Test
+    public void testSelectionPayloadOnlyBindsCheckbox() throws Exception {
+        adapter.onBindViewHolder(holder, 3);
+        assertEquals(1, icon.visibilityCalls);
+        assertFalse(checkbox.checked);
+
+        fragment.selectAll();
+        assertEquals(files, fragment.getCheckedItems());
+        adapter.onBindViewHolder(holder, 3, selectionPayload);
+        assertTrue(checkbox.checked);
+
+        fragment.clearSelections();
+        assertTrue(fragment.mSelection.isEmpty());
+        adapter.onBindViewHolder(holder, 3, selectionPayload);
+        assertFalse(checkbox.checked);
+        // The icon was never touched again
+        assertEquals(1, icon.visibilityCalls);
+    }
+
+    @Test
+    public void testOtherPayloadsBindFully() throws Exception {
+        List<Object> payloads = new ArrayList<>(selectionPayload);
+        payloads.add("other");
+        adapter.onBindViewHolder(holder, 3, payloads);
+        adapter.onBindViewHolder(holder, 3, Collections.emptyList());
+        assertEquals(2, icon.visibilityCalls);
+    }
+
+    @Test
+    public void testSelectAllNeedsMultiple() throws Exception {
+        fragment.allowMultiple = false;
+        fragment.selectAll();
+        assertTrue(fragment.mSelection.isEmpty());
+    }
+
+    @Test
+    public void testBulkSelections() throws Exception {
+        fragment.selectRange(7, 5);
+        assertEquals(Arrays.asList(files.get(5), files.get(6), files.get(7)),
+                fragment.getCheckedItems());
+
+        fragment.invertSelection();
+        assertEquals(7, fragment.mSelection.getSelectedCount());
+        assertFalse(fragment.mSelection.isSelected(6));
+
+        fragment.clearSelections();
+        fragment.selectMatching(Pattern.compile("FILE[13]", Pattern.CASE_INSENSITIVE));
+        assertEquals(Arrays.asList(files.get(1), files.get(3)), fragment.getCheckedItems());
+        assertEquals(files.get(1), fragment.getFirstCheckedItem());
+    }
+
+    @Test
+    public void testDirectoriesAreNotSelected() throws Exception {
+        final File dir = new FileEntry(new File("/dir"), "a", true, false, 0L, 0L);
+        files.add(0, dir);
+        adapter.replaceAll(files);
+        fragment.selectAll();
+        assertEquals(files.size() - 1, fragment.mSelection.getSelectedCount());
+        assertFalse(fragment.mSelection.isSelected(0));
+
+        // Inserting an item moves the selection along
+        adapter.insertItem(0, new FileEntry(new File("/dir"), "b", true, false, 0L, 0L));
+        assertFalse(fragment.mSelection.isSelected(1));
+        assertTrue(fragment.mSelection.isSelected(2));
+        fragment.invertSelection();
+        assertTrue(fragment.mSelection.isEmpty());
+    }
+
+    private static class CountingView extends View {
+        int visibilityCalls = 0;
+
+        CountingView() {
+            super(null);
+        }
+
+        @Override
+        public void setVisibility(int visibility) {
+            visibilityCalls++;
+        }
+    }
+
+    private static class RecordingCheckBox extends CheckBox {
+        boolean checked = false;
+
+        RecordingCheckBox() {
+            super(null);
+        }
+
+        @Override
+        public void setChecked(boolean checked) {
+            this.checked = checked;
+        }
+    }
+}
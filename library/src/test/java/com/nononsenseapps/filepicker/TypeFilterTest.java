@@ -0,0 +1,106 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.nononsenseapps.filepicker;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TypeFilterTest {
+
+    private final HashMap<String, String> mimeTypes = new HashMap<>();
+    private final List<String> resolved = new ArrayList<>();
+    private final TypeFilter.MimeTypeResolver resolver = extension -> {
+        resolved.add(extension);
+        return mimeTypes.get(extension);
+    };
+
+    public TypeFilterTest() {
+        mimeTypes.put("png", "image/png");
+        mimeTypes.put("jpg", "image/jpeg");
+        mimeTypes.put("pdf", "application/pdf");
+        mimeTypes.put("txt", "text/plain");
+    }
+
+    @Test
+    public void testExtensions() throws Exception {
+        TypeFilter filter = TypeFilter.compile(new String[]{".ZIP", "txt"}, null, resolver);
+        assertTrue(filter.accepts("archive.zip"));
+        assertTrue(filter.accepts("Archive.Zip"));
+        assertTrue(filter.accepts("notes.old.TXT"));
+        assertFalse(filter.accepts("zip"));
+        assertFalse(filter.accepts("archive.zip.part"));
+        assertFalse(filter.accepts(".txt"));
+        assertFalse(filter.accepts("notes."));
+        // Without MIME types nothing needs to be resolved
+        assertTrue(resolved.isEmpty());
+    }
+
+    @Test
+    public void testMimeTypes() throws Exception {
+        TypeFilter filter = TypeFilter.compile(new String[]{"txt"},
+                new String[]{"image/*", "application/PDF"}, resolver);
+        assertTrue(filter.accepts("a.png"));
+        assertTrue(filter.accepts("b.JPG"));
+        assertTrue(filter.accepts("c.pdf"));
+        assertTrue(filter.accepts("d.txt"));
+        assertFalse(filter.accepts("e.mp3"));
+        // Every extension is resolved once, listed ones never
+        assertTrue(filter.accepts("f.png"));
+        assertFalse(filter.accepts("g.mp3"));
+        assertEquals(4, resolved.size());
+        assertFalse(resolved.contains("txt"));
+    }
+
+    @Test
+    public void testAcceptAll() throws Exception {
+        TypeFilter filter = TypeFilter.compile(null, new String[]{"*/*"}, resolver);
+        assertTrue(filter.accepts("README"));
+        assertTrue(filter.accepts("a.unknown"));
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        assertEquals(TypeFilter.compile(new String[]{"b", ".A"}, null, resolver).getKey(),
+                TypeFilter.compile(new String[]{"a", "b", "a"}, new String[0], resolver).getKey());
+    }
+
+    @Test
+    public void testFragmentFilter() throws Exception {
+        FilePickerFragment picker = new FilePickerFragment();
+        picker.setTypeFilter(TypeFilter.compile(new String[]{"png"}, null, resolver));
+        File parent = new File("/A");
+        assertTrue(picker.isItemVisible(new FileEntry(parent, "a.png", false, false, 0L, 0L)));
+        assertTrue(picker.isItemVisible(new FileEntry(parent, "dir", true, false, 0L, 0L)));
+        assertFalse(picker.isItemVisible(new FileEntry(parent, "b.jpg", false, false, 0L, 0L)));
+    }
+
+    @Test
+    public void testTypeClassIsRemembered() throws Exception {
+        final int[] calls = {0};
+        FilePickerFragment picker = new FilePickerFragment() {
+            @Override
+            protected int classifyType(File file) {
+                calls[0]++;
+                return 7;
+            }
+        };
+        File entry = new FileEntry(new File("/A"), "a.png", false, false, 0L, 0L);
+        picker.prepareListing(Collections.singletonList(entry));
+        assertEquals(1, calls[0]);
+        assertEquals(7, picker.getTypeClass(entry));
+        assertEquals(1, calls[0]);
+    }
+}
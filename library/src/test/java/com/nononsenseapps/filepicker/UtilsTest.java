@@ -1,11 +1,19 @@
 package com.nononsenseapps.filepicker;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
 
 import static org.junit.Assert.assertEquals;
 
 public class UtilsTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void appendPathSimple() throws Exception {
         assertEquals("A/B", Utils.appendPath("A", "B"));
@@ -46,4 +54,34 @@ public class UtilsTest {
         assertEquals("A/B", Utils.appendPath("A//", "///B"));
         assertEquals("/", Utils.appendPath("////", "/////"));
     }
+
+    @Test
+    public void resolveBelowRootMatchesCanonicalFile() throws Exception {
+        final File root = folder.getRoot().getCanonicalFile();
+        final File dir = new File(root, "dir");
+        final File other = new File(root, "other");
+        dir.mkdir();
+        other.mkdir();
+        new File(dir, "file").createNewFile();
+        new File(other, "target").createNewFile();
+        Files.createSymbolicLink(new File(root, "linkdir").toPath(), dir.toPath());
+        Files.createSymbolicLink(new File(dir, "linkfile").toPath(),
+                new File(other, "target").toPath());
+
+        final String base = root.getPath().substring(1);
+        final String[] paths = {"dir/file", "dir/linkfile", "linkdir/file", "linkdir/linkfile",
+                "linkdir/missing", "dir/../other/target", "dir/.", "dir/..", "linkdir",
+                "dir//file/", "missing/dir/file"};
+        final CanonicalFiles io = CanonicalFiles.io();
+        final CanonicalFiles nio = CanonicalFiles.nio();
+        // Twice, so that the second round uses the remembered directories
+        for (int round = 0; round < 2; round++) {
+            for (String path : paths) {
+                final String full = base + "/" + path;
+                final File expected = new File("/", full).getCanonicalFile();
+                assertEquals(path, expected, Utils.resolveBelowRoot(full, io));
+                assertEquals(path, expected, Utils.resolveBelowRoot(full, nio));
+            }
+        }
+    }
 }
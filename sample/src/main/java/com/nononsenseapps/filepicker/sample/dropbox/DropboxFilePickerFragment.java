@@ -19,16 +19,21 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.os.CancellationSignal;
 import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 import com.dropbox.core.DbxException;
 import com.dropbox.core.v2.DbxClientV2;
 import com.dropbox.core.v2.files.CreateFolderResult;
+import com.dropbox.core.v2.files.FileMetadata;
 import com.dropbox.core.v2.files.FolderMetadata;
 import com.dropbox.core.v2.files.ListFolderResult;
 import com.dropbox.core.v2.files.Metadata;
 import com.nononsenseapps.filepicker.AbstractFilePickerFragment;
+import com.nononsenseapps.filepicker.ChunkPublisher;
+import com.nononsenseapps.filepicker.CursorPagedSource;
+import com.nononsenseapps.filepicker.PagedSource;
 import com.nononsenseapps.filepicker.sample.R;
 
 import java.io.File;
@@ -38,8 +43,10 @@ import java.util.List;
 @SuppressLint("ValidFragment")
 public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metadata> {
     private static final String TAG = "DbxFilePickerFragment";
+    private static final float STALE_ALPHA = 0.5f;
     private final DbxClientV2 dropboxClient;
     private ProgressBar progressBar;
+    private boolean pagedListing = false;
 
     @SuppressLint("ValidFragment")
     public DropboxFilePickerFragment(final DbxClientV2 api) {
@@ -49,6 +56,10 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
         }
 
         this.dropboxClient = api;
+        // Show every page of a big folder as soon as it arrives
+        setStreamingLoad(true);
+        // Show folders visited before right away, while they are listed again
+        setStaleWhileRevalidate(true);
     }
 
     @Override
@@ -62,19 +73,34 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
     }
 
     /**
-     * If we are loading, then hide the list and show the progress bar instead.
+     * If we are loading, then hide the list and show the progress bar instead. If an
+     * outdated listing is shown meanwhile, keep the list visible but dimmed.
      *
      * @param nextPath path to list files for
      */
     @Override
     protected void refresh(@NonNull Metadata nextPath) {
         super.refresh(nextPath);
-        if (isLoading) {
+        if (isLoading && !isShowingStaleData()) {
             progressBar.setVisibility(View.VISIBLE);
             recyclerView.setVisibility(View.INVISIBLE);
+        } else {
+            // The progress bar may belong to a load which was just cancelled
+            progressBar.setVisibility(View.INVISIBLE);
+            recyclerView.setVisibility(View.VISIBLE);
+            recyclerView.setAlpha(isLoading ? STALE_ALPHA : 1f);
         }
     }
 
+    /**
+     * Once the first page has arrived, show the list and hide the progress bar.
+     */
+    @Override
+    protected void onLoadProgress(@NonNull List<Metadata> chunk) {
+        progressBar.setVisibility(View.INVISIBLE);
+        recyclerView.setVisibility(View.VISIBLE);
+    }
+
     /**
      * Once loading has finished, show the list and hide the progress bar.
      */
@@ -82,6 +108,7 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
     public void onLoadFinished(Loader<List<Metadata>> loader, List<Metadata> data) {
         progressBar.setVisibility(View.INVISIBLE);
         recyclerView.setVisibility(View.VISIBLE);
+        recyclerView.setAlpha(1f);
         super.onLoadFinished(loader, data);
     }
 
@@ -92,6 +119,7 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
     public void onLoaderReset(Loader<List<Metadata>> loader) {
         progressBar.setVisibility(View.INVISIBLE);
         recyclerView.setVisibility(View.VISIBLE);
+        recyclerView.setAlpha(1f);
         super.onLoaderReset(loader);
     }
 
@@ -106,6 +134,23 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
         return file instanceof FolderMetadata;
     }
 
+    /**
+     * Dropbox sends the size along with the listing.
+     */
+    @Override
+    protected long getSize(@NonNull Metadata file) {
+        return file instanceof FileMetadata ? ((FileMetadata) file).getSize() : 0L;
+    }
+
+    /**
+     * Dropbox sends the modification time along with the listing.
+     */
+    @Override
+    protected long getLastModified(@NonNull Metadata file) {
+        return file instanceof FileMetadata ?
+                ((FileMetadata) file).getServerModified().getTime() : 0L;
+    }
+
     @NonNull
     @Override
     public Metadata getParent(@NonNull final Metadata from) {
@@ -153,6 +198,23 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
         return new Uri.Builder().scheme("dropbox").authority("").path(file.getPathDisplay()).build();
     }
 
+    /**
+     * Page through folders instead of listing them completely, for folders too big to keep in
+     * memory. Paged folders are shown in the order Dropbox returns them.
+     *
+     * @param pagedListing true to page through folders
+     */
+    public void setPagedListing(boolean pagedListing) {
+        this.pagedListing = pagedListing;
+    }
+
+    @Nullable
+    @Override
+    public PagedSource<Metadata> getPagedSource(@NonNull Metadata dir) {
+        return pagedListing && dir instanceof FolderMetadata ?
+                new DropboxPagedSource(this, dir.getPathLower()) : null;
+    }
+
     @NonNull
     @Override
     public Loader<List<Metadata>> getLoader() {
@@ -203,30 +265,61 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
     private static class DropboxAsyncTaskLoader extends AsyncTaskLoader<List<Metadata>> {
 
         private final DropboxFilePickerFragment dropboxFilePickerFragment;
+        private final ChunkPublisher<Metadata> chunkPublisher;
+        // Decided on the main thread, so navigation can not change it meanwhile
+        private final Metadata dir;
+        // Cancelled by cancelLoadInBackground(), guarded by this. Kept after the load, so that a
+        // late cancel does not reach the next one.
+        private CancellationSignal cancellationSignal;
+        private boolean started = false;
 
         public DropboxAsyncTaskLoader(DropboxFilePickerFragment dropboxFilePickerFragment, Context context) {
             super(context);
             this.dropboxFilePickerFragment = dropboxFilePickerFragment;
+            this.chunkPublisher = dropboxFilePickerFragment.newChunkPublisher();
+
+            if (dropboxFilePickerFragment.mCurrentPath == null ||
+                    !(dropboxFilePickerFragment.mCurrentPath instanceof FolderMetadata)) {
+                dropboxFilePickerFragment.mCurrentPath = dropboxFilePickerFragment.getRoot();
+            }
+            this.dir = dropboxFilePickerFragment.mCurrentPath;
         }
 
         @Override
         public List<Metadata> loadInBackground() {
-            List<Metadata> files = new ArrayList<>();
-            try {
-                if (!(dropboxFilePickerFragment.mCurrentPath instanceof FolderMetadata)) {
-                    dropboxFilePickerFragment.mCurrentPath = dropboxFilePickerFragment.getRoot();
+            final CancellationSignal signal;
+            synchronized (this) {
+                // A load on an executor may be cancelled before it created its signal, see
+                // cancelLoadInBackground()
+                if (isLoadInBackgroundCanceled() || (!started && cancellationSignal != null)) {
+                    return new ArrayList<>();
                 }
+                started = true;
+                signal = cancellationSignal = new CancellationSignal();
+            }
+            return listFolder(signal);
+        }
 
-                String pathToList = dropboxFilePickerFragment.mCurrentPath.getPathLower();
+        private List<Metadata> listFolder(CancellationSignal signal) {
+            List<Metadata> files = new ArrayList<>();
+            try {
+                String pathToList = dir.getPathLower();
                 ListFolderResult listDirResult = dropboxFilePickerFragment.dropboxClient.files().listFolder(pathToList);
-                List<Metadata> dirContents = listDirResult.getEntries();
 
-                for (Metadata entry : dirContents) {
-                    if ((dropboxFilePickerFragment.mode == MODE_FILE ||
-                            dropboxFilePickerFragment.mode == MODE_FILE_AND_DIR) ||
-                            entry instanceof FolderMetadata) {
+                // Stop between pages once cancelled
+                while (!signal.isCanceled()) {
+                    for (Metadata entry : listDirResult.getEntries()) {
                         files.add(entry);
+                        chunkPublisher.add(entry);
+                    }
+                    // Show this page while fetching the next one
+                    chunkPublisher.flush();
+
+                    if (!listDirResult.getHasMore()) {
+                        break;
                     }
+                    listDirResult = dropboxFilePickerFragment.dropboxClient.files()
+                            .listFolderContinue(listDirResult.getCursor());
                 }
 
             } catch (DbxException ignored) {
@@ -234,7 +327,24 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
                 ignored.getMessage();
             }
 
-            return files;
+            if (signal.isCanceled()) {
+                return files;
+            }
+            return dropboxFilePickerFragment.prepareListing(files);
+        }
+
+        /**
+         * The requests can not be interrupted, so a cancelled load stops after the current page.
+         */
+        @Override
+        public void cancelLoadInBackground() {
+            super.cancelLoadInBackground();
+            synchronized (this) {
+                if (cancellationSignal == null) {
+                    cancellationSignal = new CancellationSignal();
+                }
+                cancellationSignal.cancel();
+            }
         }
 
         /**
@@ -243,12 +353,6 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
         @Override
         protected void onStartLoading() {
             super.onStartLoading();
-
-            if (dropboxFilePickerFragment.mCurrentPath == null ||
-                    !(dropboxFilePickerFragment.mCurrentPath instanceof FolderMetadata)) {
-                dropboxFilePickerFragment.mCurrentPath = dropboxFilePickerFragment.getRoot();
-            }
-
             forceLoad();
         }
 
@@ -260,4 +364,33 @@ public class DropboxFilePickerFragment extends AbstractFilePickerFragment<Metada
             super.onReset();
         }
     }
+
+    /**
+     * Pages through a folder with list folder cursors, which stay valid for a long time, so
+     * pages far back are fetched again from the cursor of their batch.
+     */
+    private static class DropboxPagedSource extends CursorPagedSource<Metadata, String> {
+        private final DropboxFilePickerFragment dropboxFilePickerFragment;
+        private final String path;
+
+        DropboxPagedSource(DropboxFilePickerFragment dropboxFilePickerFragment, String path) {
+            this.dropboxFilePickerFragment = dropboxFilePickerFragment;
+            this.path = path;
+        }
+
+        @NonNull
+        @Override
+        protected Batch<Metadata, String> fetch(@Nullable String cursor) throws DbxException {
+            final ListFolderResult result = cursor == null ?
+                    dropboxFilePickerFragment.dropboxClient.files().listFolder(path) :
+                    dropboxFilePickerFragment.dropboxClient.files().listFolderContinue(cursor);
+            final List<Metadata> entries = new ArrayList<>();
+            for (Metadata entry : result.getEntries()) {
+                if (dropboxFilePickerFragment.isItemVisible(entry)) {
+                    entries.add(entry);
+                }
+            }
+            return new Batch<>(entries, result.getCursor(), result.getHasMore());
+        }
+    }
 }
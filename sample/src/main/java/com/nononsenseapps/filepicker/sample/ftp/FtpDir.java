@@ -12,6 +12,10 @@ public class FtpDir extends FtpFile {
         super(dir, name);
     }
 
+    public FtpDir(FtpFile dir, String name, long lastModified) {
+        super(dir, name, 0L, lastModified);
+    }
+
     public FtpDir(String path) {
         super(path);
     }
@@ -6,16 +6,31 @@
 
 package com.nononsenseapps.filepicker.sample.ftp;
 
+import com.nononsenseapps.filepicker.FilePaths;
+
 public class FtpFile {
 
     public static final char separatorChar = '/';
     public static final String separator = "/";
     private String path;
+    // As listed by the server, 0 if unknown
+    private long size = 0L;
+    private long lastModified = 0L;
 
     public FtpFile(FtpFile dir, String name) {
         this(dir == null ? null : dir.getPath(), name);
     }
 
+    /**
+     * @param size         in bytes
+     * @param lastModified milliseconds since the epoch
+     */
+    public FtpFile(FtpFile dir, String name, long size, long lastModified) {
+        this(dir, name);
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
     public FtpFile(String path) {
         this.path = fixSlashes(path);
     }
@@ -29,62 +44,20 @@ public class FtpFile {
         } else if (name.isEmpty()) {
             this.path = fixSlashes(dirPath);
         } else {
-            this.path = fixSlashes(join(dirPath, name));
+            this.path = FilePaths.join(dirPath, name);
         }
     }
 
     public static String fixSlashes(String origPath) {
-        // Remove duplicate adjacent slashes.
-        boolean lastWasSlash = false;
-        char[] newPath = origPath.toCharArray();
-        int length = newPath.length;
-        int newLength = 0;
-        for (int i = 0; i < length; ++i) {
-            char ch = newPath[i];
-            if (ch == '/') {
-                if (!lastWasSlash) {
-                    newPath[newLength++] = separatorChar;
-                    lastWasSlash = true;
-                }
-            } else {
-                newPath[newLength++] = ch;
-                lastWasSlash = false;
-            }
-        }
-        // Remove any trailing slash (unless this is the root of the file system).
-        if (lastWasSlash && newLength > 1) {
-            newLength--;
-        }
-        // Reuse the original string if possible.
-        return (newLength != length) ? new String(newPath, 0, newLength) : origPath;
-    }
-
-    // Joins two path components, adding a separator only if necessary.
-    public static String join(String prefix, String suffix) {
-        int prefixLength = prefix.length();
-        boolean haveSlash = (prefixLength > 0 && prefix.charAt(prefixLength - 1) == separatorChar);
-        if (!haveSlash) {
-            haveSlash = (suffix.length() > 0 && suffix.charAt(0) == separatorChar);
-        }
-        return haveSlash ? (prefix + suffix) : (prefix + separatorChar + suffix);
+        return FilePaths.normalize(origPath);
     }
 
     public String getName() {
-        int separatorIndex = path.lastIndexOf(separator);
-        return (separatorIndex < 0) ? path : path.substring(separatorIndex + 1, path.length());
+        return FilePaths.name(path);
     }
 
     public String getParent() {
-        int length = path.length(), firstInPath = 0;
-        int index = path.lastIndexOf(separatorChar);
-        if (index == -1 || path.charAt(length - 1) == separatorChar) {
-            return null;
-        }
-        if (path.indexOf(separatorChar) == index
-                && path.charAt(firstInPath) == separatorChar) {
-            return path.substring(0, index + 1);
-        }
-        return path.substring(0, index);
+        return FilePaths.parent(path);
     }
 
     public FtpFile getParentFile() {
@@ -102,6 +75,20 @@ public class FtpFile {
         return path;
     }
 
+    /**
+     * @return the size in bytes as listed by the server, or 0 if unknown
+     */
+    public long length() {
+        return size;
+    }
+
+    /**
+     * @return the modification time as listed by the server, or 0 if unknown
+     */
+    public long lastModified() {
+        return lastModified;
+    }
+
     public boolean isDirectory() {
         return false;
     }
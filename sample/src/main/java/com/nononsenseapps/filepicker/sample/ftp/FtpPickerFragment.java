@@ -18,19 +18,29 @@ import android.widget.ProgressBar;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.CancellationSignal;
 import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 import com.nononsenseapps.filepicker.AbstractFilePickerFragment;
+import com.nononsenseapps.filepicker.ChunkPublisher;
+import com.nononsenseapps.filepicker.CursorPagedSource;
+import com.nononsenseapps.filepicker.PagedSource;
 import com.nononsenseapps.filepicker.sample.R;
 
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * This example allows you to browse the files on an FTP-server
@@ -43,6 +53,7 @@ public class FtpPickerFragment extends AbstractFilePickerFragment<FtpFile> {
     private static final String KEY_FTP_PASSWORD = "KEY_FTP_PASSWORD";
     private static final String KEY_FTP_ROOTDIR = "KEY_FTP_ROOTDIR";
     private static final String TAG = "NoNonsenseFtp";
+    private static final float STALE_ALPHA = 0.5f;
     private final FTPClient ftp;
     private String server;
     private int port;
@@ -51,10 +62,15 @@ public class FtpPickerFragment extends AbstractFilePickerFragment<FtpFile> {
     private boolean loggedIn = false;
     private String rootDir = "/";
     private ProgressBar progressBar;
+    private boolean pagedListing = false;
 
     public FtpPickerFragment() {
         super();
         ftp = new FTPClient();
+        // Show the first entries of big directories as soon as they are parsed
+        setStreamingLoad(true);
+        // Show folders visited before right away, while they are listed again
+        setStaleWhileRevalidate(true);
     }
 
     public static AbstractFilePickerFragment<FtpFile> newInstance(String startPath, int mode,
@@ -208,6 +224,123 @@ public class FtpPickerFragment extends AbstractFilePickerFragment<FtpFile> {
         return new FtpAsyncTaskLoader(this, FtpPickerFragment.this.getContext());
     }
 
+    /**
+     * Page through directories instead of listing them completely, for directories too big to
+     * keep in memory. Paged directories are shown in the order the server sends them.
+     *
+     * @param pagedListing true to page through directories
+     */
+    public void setPagedListing(boolean pagedListing) {
+        this.pagedListing = pagedListing;
+    }
+
+    @Nullable
+    @Override
+    public PagedSource<FtpFile> getPagedSource(@NonNull FtpFile dir) {
+        return pagedListing && dir.isDirectory() ? new FtpPagedSource(this, dir) : null;
+    }
+
+    /**
+     * Connect and log in unless already done. Must be called while holding the lock of ftp.
+     *
+     * @return true if logged in
+     */
+    private boolean connect() {
+        if (!ftp.isConnected()) {
+            try {
+                ftp.connect(server, port);
+
+                ftp.setFileType(FTP.ASCII_FILE_TYPE);
+                ftp.enterLocalPassiveMode();
+
+                if (!(loggedIn = ftp.login(username, password))) {
+                    ftp.logout();
+                    Log.e(TAG, "Login failed");
+                }
+            } catch (IOException e) {
+                if (ftp.isConnected()) {
+                    try {
+                        ftp.disconnect();
+                    } catch (IOException ignored) {
+                    }
+                }
+                Log.e(TAG, "Could not connect to server.");
+            }
+        }
+        return loggedIn;
+    }
+
+    /**
+     * @return a task which asks the server to abort the transfer in progress. It does not
+     * take the lock on the client, which the transfer holds.
+     */
+    @NonNull
+    private Runnable newAbortTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ftp.abort();
+                } catch (IOException e) {
+                    Log.e(TAG, "Abort failed: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * Disconnect after an aborted transfer, since the replies to it leave the client out of
+     * step with the server. The next load connects again. Called with the lock on the client.
+     *
+     * @param abort the task which sent the abort, waited for so that it can not reach the
+     *              next connection
+     */
+    private void resetAfterAbort(@NonNull FutureTask<Void> abort) {
+        // An abort which has not started yet is dropped, one which has is waited for
+        if (!abort.cancel(false)) {
+            try {
+                abort.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException ignored) {
+            }
+        }
+        try {
+            ftp.disconnect();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Keep the size and date of the listing, so sorting by them needs no further requests.
+     */
+    @NonNull
+    private static FtpFile toFtpFile(@NonNull FtpFile dir, @NonNull FTPFile f) {
+        final Calendar timestamp = f.getTimestamp();
+        final long lastModified = timestamp == null ? 0L : timestamp.getTimeInMillis();
+        if (f.isDirectory()) {
+            return new FtpDir(dir, f.getName(), lastModified);
+        }
+        return new FtpFile(dir, f.getName(), Math.max(0L, f.getSize()), lastModified);
+    }
+
+    /**
+     * The server sends the size along with the listing.
+     */
+    @Override
+    protected long getSize(@NonNull FtpFile file) {
+        return file.length();
+    }
+
+    /**
+     * The server sends the modification time along with the listing, at the precision of
+     * its LIST format.
+     */
+    @Override
+    protected long getLastModified(@NonNull FtpFile file) {
+        return file.lastModified();
+    }
+
     /**
      * Used by the list to determine whether a file should be displayed or not.
      * Default behavior is to always display folders. If files can be selected,
@@ -218,7 +351,8 @@ public class FtpPickerFragment extends AbstractFilePickerFragment<FtpFile> {
      * @return True if item should be added to the list, false otherwise
      */
     protected boolean isItemVisible(final FtpFile file) {
-        return file.isDirectory() || (mode == MODE_FILE || mode == MODE_FILE_AND_DIR);
+        return (file.isDirectory() || (mode == MODE_FILE || mode == MODE_FILE_AND_DIR)) &&
+                isAcceptedType(file);
     }
 
     /**
@@ -253,23 +387,39 @@ public class FtpPickerFragment extends AbstractFilePickerFragment<FtpFile> {
     }
 
     /**
-     * If we are loading, then hide the list and show the progress bar instead.
+     * If we are loading, then hide the list and show the progress bar instead. If an
+     * outdated listing is shown meanwhile, keep the list visible but dimmed.
      *
      * @param nextPath path to list files for
      */
     @Override
     protected void refresh(@NonNull FtpFile nextPath) {
         super.refresh(nextPath);
-        if (isLoading) {
+        if (isLoading && !isShowingStaleData()) {
             progressBar.setVisibility(View.VISIBLE);
             recyclerView.setVisibility(View.INVISIBLE);
+        } else {
+            // The progress bar may belong to a load which was just cancelled
+            progressBar.setVisibility(View.INVISIBLE);
+            recyclerView.setVisibility(View.VISIBLE);
+            recyclerView.setAlpha(isLoading ? STALE_ALPHA : 1f);
         }
     }
 
+    /**
+     * The first entries have arrived, so show the list.
+     */
+    @Override
+    protected void onLoadProgress(@NonNull List<FtpFile> chunk) {
+        progressBar.setVisibility(View.INVISIBLE);
+        recyclerView.setVisibility(View.VISIBLE);
+    }
+
     @Override
     public void onLoadFinished(Loader<List<FtpFile>> loader, List<FtpFile> data) {
         progressBar.setVisibility(View.INVISIBLE);
         recyclerView.setVisibility(View.VISIBLE);
+        recyclerView.setAlpha(1f);
         super.onLoadFinished(loader, data);
     }
 
@@ -277,6 +427,7 @@ public class FtpPickerFragment extends AbstractFilePickerFragment<FtpFile> {
     public void onLoaderReset(Loader<List<FtpFile>> loader) {
         progressBar.setVisibility(View.INVISIBLE);
         recyclerView.setVisibility(View.VISIBLE);
+        recyclerView.setAlpha(1f);
         super.onLoaderReset(loader);
     }
 
@@ -298,64 +449,101 @@ public class FtpPickerFragment extends AbstractFilePickerFragment<FtpFile> {
 
     private static class FtpAsyncTaskLoader extends AsyncTaskLoader<List<FtpFile>> {
         private final FtpPickerFragment ftpPickerFragment;
+        private final ChunkPublisher<FtpFile> chunkPublisher;
+        // Decided on the main thread, so navigation can not change it meanwhile
+        private final FtpFile dir;
+        // Cancelled by cancelLoadInBackground(), guarded by this. Kept after the load, so that a
+        // late cancel does not reach the next one.
+        private CancellationSignal cancellationSignal;
+        private boolean started = false;
 
         public FtpAsyncTaskLoader(FtpPickerFragment ftpPickerFragment, Context context) {
             super(context);
             this.ftpPickerFragment = ftpPickerFragment;
+            this.chunkPublisher = ftpPickerFragment.newChunkPublisher();
+
+            // handle if directory does not exist. Fall back to root.
+            if (ftpPickerFragment.mCurrentPath == null || !ftpPickerFragment.mCurrentPath.isDirectory()) {
+                ftpPickerFragment.mCurrentPath = ftpPickerFragment.getRoot();
+            }
+            this.dir = ftpPickerFragment.mCurrentPath;
         }
 
         @Override
         public List<FtpFile> loadInBackground() {
-            List<FtpFile> sortedList = new ArrayList<>();
-
+            final CancellationSignal signal;
+            synchronized (this) {
+                // A load on an executor may be cancelled before it created its signal, see
+                // cancelLoadInBackground()
+                if (isLoadInBackgroundCanceled() || (!started && cancellationSignal != null)) {
+                    return new ArrayList<>();
+                }
+                started = true;
+                signal = cancellationSignal = new CancellationSignal();
+            }
+            return listFiles(signal);
+        }
 
-            if (!ftpPickerFragment.ftp.isConnected()) {
-                // Connect
-                try {
-                    ftpPickerFragment.ftp.connect(ftpPickerFragment.server, ftpPickerFragment.port);
+        private List<FtpFile> listFiles(CancellationSignal signal) {
+            List<FtpFile> entries = new ArrayList<>();
 
-                    ftpPickerFragment.ftp.setFileType(FTP.ASCII_FILE_TYPE);
-                    ftpPickerFragment.ftp.enterLocalPassiveMode();
+            // A cancelled load may still be using the connection, wait for it to finish
+            synchronized (ftpPickerFragment.ftp) {
+                if (signal.isCanceled()) {
+                    return entries;
+                }
 
-                    if (!(ftpPickerFragment.loggedIn = ftpPickerFragment.ftp.login(ftpPickerFragment.username, ftpPickerFragment.password))) {
-                        ftpPickerFragment.ftp.logout();
-                        Log.e(TAG, "Login failed");
-                    }
-                } catch (IOException e) {
-                    if (ftpPickerFragment.ftp.isConnected()) {
-                        try {
-                            ftpPickerFragment.ftp.disconnect();
-                        } catch (IOException ignored) {
+                if (ftpPickerFragment.connect()) {
+                    // Cancelling aborts the transfer, so the server stops sending the listing
+                    final FutureTask<Void> abort =
+                            new FutureTask<>(ftpPickerFragment.newAbortTask(), null);
+                    signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                        @Override
+                        public void onCancel() {
+                            // Called on the main thread, which may not use the network
+                            AsyncTask.THREAD_POOL_EXECUTOR.execute(abort);
+                        }
+                    });
+                    try {
+                        for (FTPFile f : ftpPickerFragment.ftp.listFiles(dir.getPath())) {
+                            if (signal.isCanceled()) {
+                                return entries;
+                            }
+                            final FtpFile file = toFtpFile(dir, f);
+                            entries.add(file);
+                            chunkPublisher.add(file);
+                        }
+                    } catch (IOException e) {
+                        if (!signal.isCanceled()) {
+                            Log.e(TAG, "IOException: " + e.getMessage());
+                        }
+                    } finally {
+                        // Waits for a listener which is running, so abort is only started
+                        // before this, if at all
+                        signal.setOnCancelListener(null);
+                        if (signal.isCanceled()) {
+                            ftpPickerFragment.resetAfterAbort(abort);
                         }
                     }
-                    Log.e(TAG, "Could not connect to server.");
                 }
             }
 
-            if (ftpPickerFragment.loggedIn) {
-                try {
-                    // handle if directory does not exist. Fall back to root.
-                    if (ftpPickerFragment.mCurrentPath == null || !ftpPickerFragment.mCurrentPath.isDirectory()) {
-                        ftpPickerFragment.mCurrentPath = ftpPickerFragment.getRoot();
-                    }
+            return ftpPickerFragment.prepareListing(entries);
+        }
 
-                    for (FTPFile f : ftpPickerFragment.ftp.listFiles(ftpPickerFragment.mCurrentPath.getPath())) {
-                        FtpFile file;
-                        if (f.isDirectory()) {
-                            file = new FtpDir(ftpPickerFragment.mCurrentPath, f.getName());
-                        } else {
-                            file = new FtpFile(ftpPickerFragment.mCurrentPath, f.getName());
-                        }
-                        if (ftpPickerFragment.isItemVisible(file)) {
-                            sortedList.add(file);
-                        }
-                    }
-                } catch (IOException e) {
-                    Log.e(TAG, "IOException: " + e.getMessage());
+        /**
+         * Aborts the transfer of the listing, the load then stops as soon as the server has
+         * closed the data connection.
+         */
+        @Override
+        public void cancelLoadInBackground() {
+            super.cancelLoadInBackground();
+            synchronized (this) {
+                if (cancellationSignal == null) {
+                    cancellationSignal = new CancellationSignal();
                 }
+                cancellationSignal.cancel();
             }
-
-            return sortedList;
         }
 
         /**
@@ -364,13 +552,61 @@ public class FtpPickerFragment extends AbstractFilePickerFragment<FtpFile> {
         @Override
         protected void onStartLoading() {
             super.onStartLoading();
+            forceLoad();
+        }
+    }
 
-            // handle if directory does not exist. Fall back to root.
-            if (ftpPickerFragment.mCurrentPath == null || !ftpPickerFragment.mCurrentPath.isDirectory()) {
-                ftpPickerFragment.mCurrentPath = ftpPickerFragment.getRoot();
-            }
+    /**
+     * Pages through a directory with a list parse engine. The engine keeps the lines the
+     * server sent, and parses entries only as they are read. Cursors are positions in the
+     * listing, a page before the current position is found by parsing from the start.
+     * <p/>
+     * Only parsing is paged. initiateListParsing reads the whole listing before the first
+     * page, and its lines stay in memory while the directory is shown, since FTP has no way to
+     * list from an offset. What is saved are the entries of rows which are never shown.
+     */
+    private static class FtpPagedSource extends CursorPagedSource<FtpFile, Integer> {
+        private static final int BATCH_SIZE = 500;
+        private final FtpPickerFragment ftpPickerFragment;
+        private final FtpFile dir;
+        private FTPListParseEngine engine = null;
+        private int enginePosition = 0;
 
-            forceLoad();
+        FtpPagedSource(FtpPickerFragment ftpPickerFragment, FtpFile dir) {
+            this.ftpPickerFragment = ftpPickerFragment;
+            this.dir = dir;
+        }
+
+        @NonNull
+        @Override
+        protected Batch<FtpFile, Integer> fetch(@Nullable Integer cursor) throws IOException {
+            final int position = cursor == null ? 0 : cursor;
+            synchronized (ftpPickerFragment.ftp) {
+                if (engine == null) {
+                    if (!ftpPickerFragment.connect()) {
+                        throw new IOException("Not logged in");
+                    }
+                    engine = ftpPickerFragment.ftp.initiateListParsing(dir.getPath());
+                    enginePosition = 0;
+                }
+                if (position < enginePosition) {
+                    engine.resetIterator();
+                    enginePosition = 0;
+                }
+                while (enginePosition < position && engine.hasNext()) {
+                    enginePosition += engine.getNext(position - enginePosition).length;
+                }
+
+                final List<FtpFile> entries = new ArrayList<>();
+                for (FTPFile f : engine.getNext(BATCH_SIZE)) {
+                    enginePosition++;
+                    final FtpFile file = toFtpFile(dir, f);
+                    if (ftpPickerFragment.isItemVisible(file)) {
+                        entries.add(file);
+                    }
+                }
+                return new Batch<>(entries, enginePosition, engine.hasNext());
+            }
         }
     }
 }
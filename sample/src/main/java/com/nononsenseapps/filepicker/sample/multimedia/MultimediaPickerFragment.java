@@ -13,6 +13,7 @@ import android.widget.ImageView;
 
 import com.bumptech.glide.Glide;
 import com.nononsenseapps.filepicker.FilePickerFragment;
+import com.nononsenseapps.filepicker.TypeFilter;
 import com.nononsenseapps.filepicker.sample.R;
 
 import java.io.File;
@@ -39,30 +40,33 @@ public class MultimediaPickerFragment extends FilePickerFragment {
     private static final int VIEWTYPE_IMAGE_CHECKABLE = 11;
     private static final int VIEWTYPE_IMAGE = 12;
 
-    private static final String[] MULTIMEDIA_EXTENSIONS =
-            new String[]{".png", ".jpg", ".gif", ".mp4"};
+    private static final TypeFilter MULTIMEDIA = TypeFilter.compile(
+            new String[]{".png", ".jpg", ".gif", ".mp4"}, null);
+    private static final int TYPE_CLASS_MULTIMEDIA = 1;
 
     /**
      * An extremely simple method for identifying multimedia. This
      * could be improved, but it's good enough for this example.
+     * <p/>
+     * Listed entries remember the result, so this is only called once per file.
      *
      * @param file which could be an image or a video
-     * @return true if the file can be previewed, false otherwise
+     * @return the class of the file
      */
-    protected boolean isMultimedia(File file) {
-        //noinspection SimplifiableIfStatement
-        if (isDir(file)) {
-            return false;
-        }
-
-        String path = file.getPath().toLowerCase();
-        for (String ext : MULTIMEDIA_EXTENSIONS) {
-            if (path.endsWith(ext)) {
-                return true;
-            }
+    @Override
+    protected int classifyType(@NonNull File file) {
+        if (!isDir(file) && MULTIMEDIA.accepts(file.getName())) {
+            return TYPE_CLASS_MULTIMEDIA;
         }
+        return super.classifyType(file);
+    }
 
-        return false;
+    /**
+     * @param file which could be an image or a video
+     * @return true if the file can be previewed, false otherwise
+     */
+    protected boolean isMultimedia(File file) {
+        return getTypeClass(file) == TYPE_CLASS_MULTIMEDIA;
     }
 
     /**